@@ -1,5 +1,6 @@
 package io.jenkins.plugins;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
@@ -7,6 +8,7 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 import org.kohsuke.accmod.Restricted;
@@ -14,14 +16,15 @@ import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 import com.qiniu.common.QiniuException;
 import com.qiniu.storage.BucketManager;
-import com.qiniu.storage.UploadManager;
-import com.qiniu.util.Auth;
 import com.qiniu.util.StringMap;
 
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.BuildListener;
+import hudson.model.Computer;
+import hudson.model.Node;
 import hudson.model.Run;
+import hudson.model.TaskListener;
 import jenkins.model.ArtifactManager;
 import jenkins.model.StandardArtifactManager;
 import jenkins.util.VirtualFile;
@@ -38,18 +41,26 @@ public final class QiniuArtifactManager extends ArtifactManager {
     private StandardArtifactManager standardArtifactManager;
     @Nonnull
     private String objectNamePrefixWithBuildNumber;
+    // Saved with the build, null for builds recorded before it existed, whose marker has to be checked instead
+    @CheckForNull
+    private volatile Boolean archivedToQiniu;
+    @CheckForNull
+    private transient Run<?, ?> run;
 
     public QiniuArtifactManager(Run<?, ?> run, @Nonnull QiniuConfig config) {
         this.config = config;
+        this.run = run;
         this.objectNamePrefixWithBuildNumber = this.generateObjectNamePrefixWithBuildNumber(run);
         this.standardArtifactManager = new StandardArtifactManager(run);
         this.marker = new Marker(this.objectNamePrefixWithBuildNumber, this.config);
+        this.archivedToQiniu = Boolean.FALSE;
         LOG.log(Level.INFO, "QiniuArtifactManager is constructed, accessKey={0}, prefix={1}",
                 new Object[] { this.config.getAccessKey(), this.objectNamePrefixWithBuildNumber });
     }
 
     @Override
     public void onLoad(Run<?, ?> run) {
+        this.run = run;
         this.objectNamePrefixWithBuildNumber = this.generateObjectNamePrefixWithBuildNumber(run);
         this.standardArtifactManager = new StandardArtifactManager(run);
         this.marker = new Marker(this.objectNamePrefixWithBuildNumber, this.config);
@@ -74,13 +85,14 @@ public final class QiniuArtifactManager extends ArtifactManager {
     @Override
     public void archive(FilePath workspace, Launcher launcher, BuildListener buildListener, Map<String, String> pathMap)
             throws IOException, InterruptedException {
-        if (!this.config.isApplyForAllJobs() && !this.marker.didUseQiniuArtifactArchiver()) {
+        if (!this.config.isApplyForAllJobs() && !this.didArchiveToQiniu()) {
             LOG.log(Level.INFO, "StandardArtifactManager::archive()");
             this.standardArtifactManager.archive(workspace, launcher, buildListener, pathMap);
             return;
         } else if (this.config.isApplyForAllJobs()) {
             this.marker.useQiniuArtifactArchiver();
         }
+        this.archivedToQiniu = Boolean.TRUE;
 
         LOG.log(Level.INFO, "QiniuArtifactManager::archive()");
         final Map<String, String> artifacts = new HashMap<>();
@@ -89,7 +101,46 @@ public final class QiniuArtifactManager extends ArtifactManager {
             final String filePath = QiniuFileSystem.fromFileSystemPathToObjectName(entry.getValue());
             artifacts.put(objectNameWithoutPrefix, filePath);
         }
-        workspace.act(new QiniuUploader(this.config, artifacts, this.objectNamePrefixWithBuildNumber, buildListener));
+        try {
+            workspace.act(new QiniuUploader(this.config, artifacts, this.objectNamePrefixWithBuildNumber,
+                    this.getPreviousObjectNamePrefix(), this.createRateLimiter(workspace), buildListener));
+        } finally {
+            this.invalidate();
+        }
+    }
+
+    @Nonnull
+    QiniuUploader.Summary archive(@Nonnull FilePath workspace, @Nonnull TaskListener listener,
+            @Nonnull QiniuFileScanner scanner) throws IOException, InterruptedException {
+        LOG.log(Level.INFO, "QiniuArtifactManager::archive(scanner)");
+        // Marked before uploading, so objects of a failed or interrupted upload are still browsed and deleted
+        this.marker.useQiniuArtifactArchiver();
+        this.archivedToQiniu = Boolean.TRUE;
+        try {
+            return workspace.act(new QiniuUploader(this.config, scanner, this.objectNamePrefixWithBuildNumber,
+                    this.getPreviousObjectNamePrefix(), this.createRateLimiter(workspace), listener));
+        } finally {
+            this.invalidate();
+        }
+    }
+
+    @Nonnull
+    private QiniuRateLimiter createRateLimiter(@Nonnull FilePath workspace) {
+        final Computer computer = workspace.toComputer();
+        final Node node = computer == null ? null : computer.getNode();
+        return QiniuRateLimiter.create(this.config, node, workspace.getChannel());
+    }
+
+    @CheckForNull
+    private String getPreviousObjectNamePrefix() {
+        if (this.run == null || this.config.isContentAddressableStorage()) {
+            return null;
+        }
+        final Run<?, ?> previousRun = this.run.getPreviousSuccessfulBuild();
+        if (previousRun == null) {
+            return null;
+        }
+        return this.generateObjectNamePrefixWithBuildNumber(previousRun);
     }
 
     @Override
@@ -97,27 +148,75 @@ public final class QiniuArtifactManager extends ArtifactManager {
         if (!this.config.isDeleteArtifacts()) {
             return false;
         }
-        if (!this.marker.didUseQiniuArtifactArchiver()) {
+        final VirtualFile root = this.root();
+        if (!(root instanceof QiniuFile)) {
             LOG.log(Level.INFO, "StandardArtifactManager::delete()");
+            this.invalidate();
             return this.standardArtifactManager.delete();
         }
         LOG.log(Level.INFO, "QiniuArtifactManager::delete()");
 
-        final QiniuFile qiniuFile = (QiniuFile) this.root();
-        final boolean result = qiniuFile.deleteRecursively();
-        this.marker.deleteQiniuArtifactArchiverMark();
-        return result;
+        final QiniuFile qiniuFile = (QiniuFile) root;
+        try {
+            final boolean result = qiniuFile.deleteRecursively();
+            this.marker.deleteQiniuArtifactArchiverMark();
+            return result;
+        } finally {
+            this.invalidate();
+        }
+    }
+
+    private void invalidate() {
+        QiniuFileSystemCache.invalidate(this.config, this.objectNamePrefixWithBuildNumber);
+        if (this.run != null) {
+            QiniuIndex.invalidate(this.getIndexFile(this.run));
+        }
+    }
+
+    @Nonnull
+    private File getIndexFile(@Nonnull Run<?, ?> run) {
+        return new File(run.getRootDir(), QiniuIndex.FILE_NAME);
+    }
+
+    private boolean didArchiveToQiniu() {
+        final Boolean archivedToQiniu = this.archivedToQiniu;
+        if (archivedToQiniu != null) {
+            return archivedToQiniu;
+        }
+        return this.marker.didUseQiniuArtifactArchiver();
     }
 
     @Override
     public VirtualFile root() {
-        if (!this.marker.didUseQiniuArtifactArchiver()) {
+        if (Boolean.FALSE.equals(this.archivedToQiniu)) {
             LOG.log(Level.INFO, "StandardArtifactManager::root()");
             return this.standardArtifactManager.root();
         }
-        LOG.log(Level.INFO, "QiniuArtifactManager::root(): prefix={0}", this.objectNamePrefixWithBuildNumber);
-        final QiniuFileSystem qiniuFileSystem = QiniuFileSystem.create(this.config,
+        // An index built while the build runs would miss what it archives later, so only finished builds are indexed
+        if (this.config.isMemoryMappedIndex() && this.run != null && !this.run.isBuilding()) {
+            try {
+                final QiniuIndex index = QiniuIndex.get(this.config, this.objectNamePrefixWithBuildNumber,
+                        this.getIndexFile(this.run), this::didArchiveToQiniu);
+                if (index == null) {
+                    LOG.log(Level.INFO, "StandardArtifactManager::root()");
+                    return this.standardArtifactManager.root();
+                }
+                LOG.log(Level.INFO, "QiniuArtifactManager::root(): indexed prefix={0}",
+                        this.objectNamePrefixWithBuildNumber);
+                return new QiniuFile(QiniuFileSystem.create(this.config, this.objectNamePrefixWithBuildNumber, index),
+                        null);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "QiniuArtifactManager::root(): failed to load index, prefix={0}: {1}",
+                        new Object[] { this.objectNamePrefixWithBuildNumber, e });
+            }
+        }
+        final QiniuFileSystem qiniuFileSystem = QiniuFileSystemCache.get(this.config,
                 this.objectNamePrefixWithBuildNumber);
+        if (!qiniuFileSystem.hasManifest() && !this.didArchiveToQiniu()) {
+            LOG.log(Level.INFO, "StandardArtifactManager::root()");
+            return this.standardArtifactManager.root();
+        }
+        LOG.log(Level.INFO, "QiniuArtifactManager::root(): prefix={0}", this.objectNamePrefixWithBuildNumber);
         return new QiniuFile(qiniuFileSystem, null);
     }
 
@@ -150,12 +249,9 @@ public final class QiniuArtifactManager extends ArtifactManager {
         }
 
         public void useQiniuArtifactArchiver() throws IOException {
-            final UploadManager uploadManager = new UploadManager(this.config.getConfiguration());
-            final Auth auth = Auth.create(this.config.getAccessKey(), this.config.getSecretKey().getPlainText());
-            final String uploadToken = auth.uploadToken(this.config.getBucketName(), null, 24 * 3600,
-                    new StringMap().put("insertOnly", 0));
-            Initializer.setAppName();
-            uploadManager.put("{}".getBytes("UTF-8"), this.objectName, uploadToken, null, null, true);
+            final String uploadToken = this.config.getAuth().uploadToken(this.config.getBucketName(), null,
+                    24 * 3600, new StringMap().put("insertOnly", 0));
+            this.config.getUploadManager().put("{}".getBytes("UTF-8"), this.objectName, uploadToken, null, null, true);
         }
 
         public void deleteQiniuArtifactArchiverMark() throws IOException {
@@ -19,7 +19,6 @@ import com.qiniu.common.QiniuException;
 import com.qiniu.storage.BucketManager;
 import com.qiniu.storage.Configuration;
 import com.qiniu.storage.Configuration.ResumableUploadAPIVersion;
-import com.qiniu.storage.Region;
 import com.qiniu.util.Auth;
 
 import hudson.Extension;
@@ -36,9 +35,6 @@ import jenkins.model.Jenkins;
 public final class QiniuArtifactManagerFactory extends ArtifactManagerFactory implements QiniuConfigurable {
     private static final boolean applyForAllJobs = false;
     private static final Logger LOG = Logger.getLogger(QiniuArtifactManagerFactory.class.getName());
-    private static final String DEFAULT_RS_HOST = Configuration.defaultRsHost;
-    private static final String DEFAULT_API_HOST = Configuration.defaultApiHost;
-    private static final String DEFAULT_UC_HOST = Configuration.defaultUcHost;
 
     @Nonnull
     private final QiniuConfig config;
@@ -49,8 +45,12 @@ public final class QiniuArtifactManagerFactory extends ArtifactManagerFactory im
             @Nonnull String rsDomain, @Nonnull String rsfDomain, @Nonnull String ucDomain, @Nonnull String apiDomain,
             @Nonnull String upDomain,
             final boolean useHTTPs, final int fileType, final boolean deleteArtifacts,
-            int multipartUploadConcurrency, int multipartUploadPartSize,
-            int multipartUploadThreshold, int connectTimeout,
+            final boolean incrementalArchive, final boolean contentAddressableStorage, final boolean packSmallFiles,
+            @Nonnull String compressedFiles, final boolean memoryMappedIndex, int downloadCacheSize,
+            int uploadConcurrency, int uploadBandwidthLimit,
+            int uploadRequestRateLimit, @Nonnull String labelUploadLimits, final boolean adaptiveMultipartUpload,
+            int multipartUploadConcurrency, int multipartUploadPartSize, int multipartUploadThreshold,
+            int connectTimeout,
             int readTimeout, int writeTimeout, int retryCount) {
         accessKey = Util.fixEmptyAndTrim(accessKey);
         bucketName = Util.fixEmptyAndTrim(bucketName);
@@ -60,6 +60,8 @@ public final class QiniuArtifactManagerFactory extends ArtifactManagerFactory im
         rsfDomain = Util.fixEmptyAndTrim(rsfDomain);
         ucDomain = Util.fixEmptyAndTrim(ucDomain);
         apiDomain = Util.fixEmptyAndTrim(apiDomain);
+        compressedFiles = Util.fixEmptyAndTrim(compressedFiles);
+        labelUploadLimits = Util.fixEmptyAndTrim(labelUploadLimits);
 
         if (accessKey == null) {
             throw new IllegalArgumentException("accessKey must not be null or empty");
@@ -69,6 +71,29 @@ public final class QiniuArtifactManagerFactory extends ArtifactManagerFactory im
             throw new IllegalArgumentException("bucketName must not be null or empty");
         }
 
+        if (uploadConcurrency == 0) {
+            uploadConcurrency = QiniuConfig.DEFAULT_UPLOAD_CONCURRENCY;
+        } else if (uploadConcurrency < 0) {
+            throw new IllegalArgumentException("uploadConcurrency must be valid positive integer");
+        }
+
+        if (downloadCacheSize < 0) {
+            throw new IllegalArgumentException("downloadCacheSize must not be negative");
+        }
+
+        if (uploadBandwidthLimit < 0) {
+            throw new IllegalArgumentException("uploadBandwidthLimit must not be negative");
+        }
+
+        if (uploadRequestRateLimit < 0) {
+            throw new IllegalArgumentException("uploadRequestRateLimit must not be negative");
+        }
+
+        if (labelUploadLimits == null) {
+            labelUploadLimits = "";
+        }
+        QiniuRateLimiter.parseLabelLimits(labelUploadLimits);
+
         if (multipartUploadConcurrency == 0) {
             multipartUploadConcurrency = 1;
         } else if (multipartUploadConcurrency < 0) {
@@ -129,9 +154,15 @@ public final class QiniuArtifactManagerFactory extends ArtifactManagerFactory im
         if (downloadDomain == null) {
             downloadDomain = "";
         }
+        if (compressedFiles == null) {
+            compressedFiles = "";
+        }
         QiniuConfig config = new QiniuConfig(accessKey, secretKey, bucketName, objectNamePrefix, downloadDomain,
                 upDomain, rsDomain, rsfDomain, ucDomain, apiDomain, useHTTPs, fileType, deleteArtifacts,
-                applyForAllJobs, multipartUploadConcurrency, multipartUploadPartSize, multipartUploadThreshold,
+                applyForAllJobs, incrementalArchive, contentAddressableStorage, packSmallFiles, compressedFiles,
+                memoryMappedIndex, downloadCacheSize, uploadConcurrency,
+                uploadBandwidthLimit, uploadRequestRateLimit, labelUploadLimits, adaptiveMultipartUpload,
+                multipartUploadConcurrency, multipartUploadPartSize, multipartUploadThreshold,
                 connectTimeout, readTimeout, writeTimeout, retryCount);
         if (downloadDomain.isEmpty()) {
             boolean couldUseDefaultIoSrc = false;
@@ -153,8 +184,10 @@ public final class QiniuArtifactManagerFactory extends ArtifactManagerFactory im
                                 objectNamePrefix, defaultDomain,
                                 upDomain, rsDomain, rsfDomain, ucDomain, apiDomain,
                                 useHTTPs, fileType, deleteArtifacts, applyForAllJobs,
-                                multipartUploadConcurrency, multipartUploadPartSize,
-                                multipartUploadThreshold,
+                                incrementalArchive, contentAddressableStorage, packSmallFiles, compressedFiles,
+                                memoryMappedIndex, downloadCacheSize, uploadConcurrency,
+                                uploadBandwidthLimit, uploadRequestRateLimit, labelUploadLimits, adaptiveMultipartUpload,
+                                multipartUploadConcurrency, multipartUploadPartSize, multipartUploadThreshold,
                                 connectTimeout, readTimeout, writeTimeout, retryCount);
                     } else {
                         throw new CannotGetDownloadDomain(
@@ -390,6 +423,95 @@ public final class QiniuArtifactManagerFactory extends ArtifactManagerFactory im
             return FormValidation.ok();
         }
 
+        @POST
+        public FormValidation doCheckUploadConcurrency(@QueryParameter String uploadConcurrency)
+                throws IOException, ServletException {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            uploadConcurrency = Util.fixEmptyAndTrim(uploadConcurrency);
+            if (uploadConcurrency != null) {
+                try {
+                    int num = Integer.parseInt(uploadConcurrency);
+                    if (num <= 0) {
+                        throw new NumberFormatException("uploadConcurrency must be positive");
+                    }
+                } catch (NumberFormatException err) {
+                    return FormValidation.error(err,
+                            Messages.QiniuArtifactManagerFactory_DescriptorImpl_errors_invalidUploadConcurrency());
+                }
+            }
+            return FormValidation.ok();
+        }
+
+        @POST
+        public FormValidation doCheckUploadBandwidthLimit(@QueryParameter String uploadBandwidthLimit)
+                throws IOException, ServletException {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            uploadBandwidthLimit = Util.fixEmptyAndTrim(uploadBandwidthLimit);
+            if (uploadBandwidthLimit != null) {
+                try {
+                    int num = Integer.parseInt(uploadBandwidthLimit);
+                    if (num < 0) {
+                        throw new NumberFormatException("uploadBandwidthLimit must not be negative");
+                    }
+                } catch (NumberFormatException err) {
+                    return FormValidation.error(err,
+                            Messages.QiniuArtifactManagerFactory_DescriptorImpl_errors_invalidUploadBandwidthLimit());
+                }
+            }
+            return FormValidation.ok();
+        }
+
+        @POST
+        public FormValidation doCheckDownloadCacheSize(@QueryParameter String downloadCacheSize)
+                throws IOException, ServletException {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            downloadCacheSize = Util.fixEmptyAndTrim(downloadCacheSize);
+            if (downloadCacheSize != null) {
+                try {
+                    int num = Integer.parseInt(downloadCacheSize);
+                    if (num < 0) {
+                        throw new NumberFormatException("downloadCacheSize must not be negative");
+                    }
+                } catch (NumberFormatException err) {
+                    return FormValidation.error(err,
+                            Messages.QiniuArtifactManagerFactory_DescriptorImpl_errors_invalidDownloadCacheSize());
+                }
+            }
+            return FormValidation.ok();
+        }
+
+        @POST
+        public FormValidation doCheckUploadRequestRateLimit(@QueryParameter String uploadRequestRateLimit)
+                throws IOException, ServletException {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            uploadRequestRateLimit = Util.fixEmptyAndTrim(uploadRequestRateLimit);
+            if (uploadRequestRateLimit != null) {
+                try {
+                    int num = Integer.parseInt(uploadRequestRateLimit);
+                    if (num < 0) {
+                        throw new NumberFormatException("uploadRequestRateLimit must not be negative");
+                    }
+                } catch (NumberFormatException err) {
+                    return FormValidation.error(err,
+                            Messages.QiniuArtifactManagerFactory_DescriptorImpl_errors_invalidUploadRequestRateLimit());
+                }
+            }
+            return FormValidation.ok();
+        }
+
+        @POST
+        public FormValidation doCheckLabelUploadLimits(@QueryParameter String labelUploadLimits)
+                throws IOException, ServletException {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            try {
+                QiniuRateLimiter.parseLabelLimits(Util.fixNull(labelUploadLimits));
+            } catch (IllegalArgumentException err) {
+                return FormValidation.error(err,
+                        Messages.QiniuArtifactManagerFactory_DescriptorImpl_errors_invalidLabelUploadLimits());
+            }
+            return FormValidation.ok();
+        }
+
         @POST
         public FormValidation doCheckMultipartUploadConcurrency(@QueryParameter String multipartUploadConcurrency)
                 throws IOException, ServletException {
@@ -593,62 +715,12 @@ public final class QiniuArtifactManagerFactory extends ArtifactManagerFactory im
         @Nonnull
         private Configuration getConfiguration(String upDomain, String rsDomain, String rsfDomain, String ucDomain,
                 String apiDomain, final boolean useHTTPs) {
-            rsDomain = Util.fixEmptyAndTrim(rsDomain);
-            ucDomain = Util.fixEmptyAndTrim(ucDomain);
-            apiDomain = Util.fixEmptyAndTrim(apiDomain);
-            upDomain = Util.fixEmptyAndTrim(upDomain);
-            rsfDomain = Util.fixEmptyAndTrim(rsfDomain);
-
-            if (rsDomain != null && !Configuration.defaultRsHost.equals(rsDomain)) {
-                Configuration.defaultRsHost = rsDomain;
-            } else if (rsDomain == null) {
-                Configuration.defaultRsHost = DEFAULT_RS_HOST;
-            }
-
-            if (ucDomain != null && !Configuration.defaultUcHost.equals(ucDomain)) {
-                Configuration.defaultUcHost = ucDomain;
-            } else if (ucDomain == null) {
-                Configuration.defaultUcHost = DEFAULT_UC_HOST;
-            }
-
-            if (apiDomain != null && !Configuration.defaultApiHost.equals(apiDomain)) {
-                Configuration.defaultApiHost = apiDomain;
-            } else if (apiDomain == null) {
-                Configuration.defaultApiHost = DEFAULT_API_HOST;
-            }
-
-            final Configuration config = new Configuration();
+            final Configuration config = new Configuration(
+                    QiniuConfig.createRegion(upDomain, rsDomain, rsfDomain, ucDomain, apiDomain));
             config.resumableUploadAPIVersion = ResumableUploadAPIVersion.V2;
             config.useHttpsDomains = useHTTPs;
-            config.region = mayCreateRegion(upDomain, rsDomain, rsfDomain, apiDomain);
             return config;
         }
-
-        private Region mayCreateRegion(final String upDomain, final String rsDomain, final String rsfDomain,
-                final String apiDomain) {
-            boolean returnsNull = true;
-            Region.Builder regionBuilder = new Region.Builder();
-            if (upDomain != null) {
-                regionBuilder = regionBuilder.accUpHost(upDomain).srcUpHost(upDomain);
-                returnsNull = false;
-            }
-            if (rsDomain != null) {
-                regionBuilder = regionBuilder.rsHost(rsDomain);
-                returnsNull = false;
-            }
-            if (rsfDomain != null) {
-                regionBuilder = regionBuilder.rsfHost(rsfDomain);
-                returnsNull = false;
-            }
-            if (apiDomain != null) {
-                regionBuilder = regionBuilder.apiHost(apiDomain);
-                returnsNull = false;
-            }
-            if (returnsNull) {
-                return null;
-            }
-            return regionBuilder.build();
-        }
     }
 
     public static class QiniuRuntimeException extends RuntimeException {
@@ -740,10 +812,56 @@ public final class QiniuArtifactManagerFactory extends ArtifactManagerFactory im
         return this.config.isApplyForAllJobs();
     }
 
+    public boolean isIncrementalArchive() {
+        return this.config.isIncrementalArchive();
+    }
+
+    public boolean isContentAddressableStorage() {
+        return this.config.isContentAddressableStorage();
+    }
+
+    public boolean isPackSmallFiles() {
+        return this.config.isPackSmallFiles();
+    }
+
+    public boolean isMemoryMappedIndex() {
+        return this.config.isMemoryMappedIndex();
+    }
+
+    public int getDownloadCacheSize() {
+        return this.config.getDownloadCacheSize();
+    }
+
+    @Nonnull
+    public String getCompressedFiles() {
+        return this.config.getCompressedFiles();
+    }
+
+    public int getUploadBandwidthLimit() {
+        return this.config.getUploadBandwidthLimit();
+    }
+
+    public int getUploadRequestRateLimit() {
+        return this.config.getUploadRequestRateLimit();
+    }
+
+    @Nonnull
+    public String getLabelUploadLimits() {
+        return this.config.getLabelUploadLimits();
+    }
+
     public int getFileType() {
         return this.config.getFileType();
     }
 
+    public int getUploadConcurrency() {
+        return this.config.getUploadConcurrency();
+    }
+
+    public boolean isAdaptiveMultipartUpload() {
+        return this.config.isAdaptiveMultipartUpload();
+    }
+
     public int getMultipartUploadConcurrency() {
         return this.config.getMultipartUploadConcurrency();
     }
@@ -0,0 +1,111 @@
+package io.jenkins.plugins;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import com.qiniu.common.QiniuException;
+import com.qiniu.http.Client;
+import com.qiniu.storage.BucketManager;
+import com.qiniu.storage.Configuration;
+import com.qiniu.storage.UploadManager;
+import com.qiniu.util.Auth;
+
+import hudson.Util;
+
+@Restricted(NoExternalUse.class)
+final class QiniuClients {
+    private static final Logger LOG = Logger.getLogger(QiniuClients.class.getName());
+    private static final int MAX_CACHED_CLIENTS = 8;
+    // Least recently used clients are evicted one at a time; a build still holding an evicted one keeps using it
+    private static final Map<String, QiniuClients> CACHE = new LinkedHashMap<String, QiniuClients>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, QiniuClients> eldest) {
+            return this.size() > MAX_CACHED_CLIENTS;
+        }
+    };
+
+    @Nonnull
+    private final Auth auth;
+    @Nonnull
+    private final Configuration configuration;
+    @Nonnull
+    private final Client client;
+    @Nonnull
+    private final BucketManager bucketManager;
+    @Nonnull
+    private final UploadManager uploadManager;
+    private final ConcurrentMap<String, String> sourceHosts = new ConcurrentHashMap<>();
+
+    private QiniuClients(@Nonnull final QiniuConfig config) {
+        Initializer.setAppName();
+        this.auth = config.createAuth();
+        this.configuration = config.createConfiguration();
+        this.client = new Client(this.configuration);
+        this.bucketManager = new BucketManager(this.auth, this.configuration, this.client);
+        this.uploadManager = new UploadManager(this.configuration, this.client, null);
+    }
+
+    @Nonnull
+    static QiniuClients get(@Nonnull final QiniuConfig config) {
+        final String fingerprint = config.getFingerprint();
+        synchronized (CACHE) {
+            QiniuClients clients = CACHE.get(fingerprint);
+            if (clients == null) {
+                LOG.log(Level.INFO, "QiniuClients::get(): create clients for accessKey={0}, bucketName={1}",
+                        new Object[] { config.getAccessKey(), config.getBucketName() });
+                clients = new QiniuClients(config);
+                CACHE.put(fingerprint, clients);
+            }
+            return clients;
+        }
+    }
+
+    @Nonnull
+    Auth getAuth() {
+        return this.auth;
+    }
+
+    @Nonnull
+    Configuration getConfiguration() {
+        return this.configuration;
+    }
+
+    @Nonnull
+    Client getClient() {
+        return this.client;
+    }
+
+    @Nonnull
+    BucketManager getBucketManager() {
+        return this.bucketManager;
+    }
+
+    @Nonnull
+    UploadManager getUploadManager() {
+        return this.uploadManager;
+    }
+
+    // The source host of a bucket does not change, so UC is asked once per bucket; an empty string records that
+    // the bucket has none. Failures are not cached.
+    @CheckForNull
+    String getSourceHost(@Nonnull final String bucketName) throws QiniuException {
+        String sourceHost = this.sourceHosts.get(bucketName);
+        if (sourceHost == null) {
+            sourceHost = Util.fixNull(this.bucketManager.getDefaultIoSrcHost(bucketName));
+            this.sourceHosts.put(bucketName, sourceHost);
+        }
+        return sourceHost.isEmpty() ? null : sourceHost;
+    }
+}
@@ -1,21 +1,24 @@
 package io.jenkins.plugins;
 
+import java.io.IOException;
 import java.io.Serializable;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 import com.qiniu.storage.BucketManager;
 import com.qiniu.storage.Configuration;
 import com.qiniu.storage.Configuration.ResumableUploadAPIVersion;
 import com.qiniu.storage.Region;
+import com.qiniu.storage.UploadManager;
 import com.qiniu.util.Auth;
 
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Util;
 import hudson.util.Secret;
 
 public final class QiniuConfig implements Serializable, QiniuConfigurable {
     private static final long serialVersionUID = 3L;
+    static final int DEFAULT_UPLOAD_CONCURRENCY = 8;
     @Nonnull
     private final String accessKey;
     @Nonnull
@@ -24,21 +27,30 @@ public final class QiniuConfig implements Serializable, QiniuConfigurable {
     private final String bucketName, objectNamePrefix, downloadDomain, upDomain;
     @Nonnull
     private final String rsDomain, rsfDomain, ucDomain, apiDomain;
+    @Nonnull
+    private final String compressedFiles, labelUploadLimits;
 
-    private final boolean useHTTPs, deleteArtifacts, applyForAllJobs;
+    private final boolean useHTTPs, deleteArtifacts, applyForAllJobs, incrementalArchive;
+    private final boolean contentAddressableStorage, packSmallFiles, memoryMappedIndex, adaptiveMultipartUpload;
     private final int fileType;
+    private final int downloadCacheSize;
+    private final int uploadConcurrency, uploadBandwidthLimit, uploadRequestRateLimit;
     private final int multipartUploadConcurrency, multipartUploadPartSize, multipartUploadThreshold;
     private final int connectTimeout, readTimeout, writeTimeout, retryCount;
-
-    private static final String DEFAULT_RS_HOST = Configuration.defaultRsHost;
-    private static final String DEFAULT_API_HOST = Configuration.defaultApiHost;
-    private static final String DEFAULT_UC_HOST = Configuration.defaultUcHost;
+    @CheckForNull
+    private transient String fingerprint;
+    @CheckForNull
+    private transient volatile QiniuClients clients;
 
     public QiniuConfig(@Nonnull final String accessKey, @Nonnull final Secret secretKey,
             @Nonnull final String bucketName, @Nonnull final String objectNamePrefix,
             @Nonnull final String downloadDomain, @Nonnull final String upDomain, @Nonnull final String rsDomain,
             @Nonnull final String rsfDomain, @Nonnull final String ucDomain, @Nonnull final String apiDomain,
             final boolean useHTTPs, final int fileType, final boolean deleteArtifacts, final boolean applyForAllJobs,
+            final boolean incrementalArchive, final boolean contentAddressableStorage, final boolean packSmallFiles,
+            @Nonnull final String compressedFiles, final boolean memoryMappedIndex, final int downloadCacheSize,
+            final int uploadConcurrency, final int uploadBandwidthLimit, final int uploadRequestRateLimit,
+            @Nonnull final String labelUploadLimits, final boolean adaptiveMultipartUpload,
             final int multipartUploadConcurrency, final int multipartUploadPartSize, final int multipartUploadThreshold,
             final int connectTimeout, final int readTimeout, final int writeTimeout, final int retryCount) {
         this.accessKey = accessKey;
@@ -55,6 +67,17 @@ public final class QiniuConfig implements Serializable, QiniuConfigurable {
         this.fileType = fileType;
         this.deleteArtifacts = deleteArtifacts;
         this.applyForAllJobs = applyForAllJobs;
+        this.incrementalArchive = incrementalArchive;
+        this.contentAddressableStorage = contentAddressableStorage;
+        this.packSmallFiles = packSmallFiles;
+        this.compressedFiles = compressedFiles;
+        this.memoryMappedIndex = memoryMappedIndex;
+        this.downloadCacheSize = downloadCacheSize;
+        this.uploadConcurrency = uploadConcurrency;
+        this.uploadBandwidthLimit = uploadBandwidthLimit;
+        this.uploadRequestRateLimit = uploadRequestRateLimit;
+        this.labelUploadLimits = labelUploadLimits;
+        this.adaptiveMultipartUpload = adaptiveMultipartUpload;
         this.multipartUploadConcurrency = multipartUploadConcurrency;
         this.multipartUploadPartSize = multipartUploadPartSize;
         this.multipartUploadThreshold = multipartUploadThreshold;
@@ -66,47 +89,70 @@ public final class QiniuConfig implements Serializable, QiniuConfigurable {
 
     @Nonnull
     public BucketManager getBucketManager() {
-        Initializer.setAppName();
-        return new BucketManager(this.getAuth(), this.getConfiguration());
+        return this.getClients().getBucketManager();
+    }
+
+    @Nonnull
+    public UploadManager getUploadManager() {
+        return this.getClients().getUploadManager();
     }
 
     @Nonnull
     public Auth getAuth() {
-        final Auth auth = Auth.create(this.accessKey, this.secretKey.getPlainText());
-        if (auth == null) {
-            throw new RuntimeException("Failed to create Auth");
-        }
-        return auth;
+        return this.getClients().getAuth();
     }
 
     @Nonnull
-    @SuppressFBWarnings(value = "ST_WRITE_TO_STATIC_FROM_INSTANCE_METHOD", justification = "I must set static variable here")
     public Configuration getConfiguration() {
-        final String rsDomain = Util.fixEmptyAndTrim(this.rsDomain);
-        final String ucDomain = Util.fixEmptyAndTrim(this.ucDomain);
-        final String apiDomain = Util.fixEmptyAndTrim(this.apiDomain);
-        final String upDomain = Util.fixEmptyAndTrim(this.upDomain);
-        final String rsfDomain = Util.fixEmptyAndTrim(this.rsfDomain);
-
-        if (rsDomain != null && !Configuration.defaultRsHost.equals(rsDomain)) {
-            Configuration.defaultRsHost = rsDomain;
-        } else if (rsDomain == null) {
-            Configuration.defaultRsHost = DEFAULT_RS_HOST;
+        return this.getClients().getConfiguration();
+    }
+
+    @CheckForNull
+    String getSourceHost() throws IOException {
+        return this.getClients().getSourceHost(this.bucketName);
+    }
+
+    @Nonnull
+    private QiniuClients getClients() {
+        QiniuClients clients = this.clients;
+        if (clients == null) {
+            clients = QiniuClients.get(this);
+            this.clients = clients;
         }
+        return clients;
+    }
 
-        if (ucDomain != null && !Configuration.defaultUcHost.equals(ucDomain)) {
-            Configuration.defaultUcHost = ucDomain;
-        } else if (ucDomain == null) {
-            Configuration.defaultUcHost = DEFAULT_UC_HOST;
+    @Nonnull
+    String getFingerprint() {
+        String fingerprint = this.fingerprint;
+        if (fingerprint == null) {
+            fingerprint = Util.getDigestOf(String.join("\n", this.accessKey, this.secretKey.getPlainText(),
+                    this.bucketName, this.upDomain, this.rsDomain, this.rsfDomain, this.ucDomain,
+                    this.apiDomain, String.valueOf(this.useHTTPs),
+                    String.valueOf(this.multipartUploadConcurrency), String.valueOf(this.multipartUploadPartSize),
+                    String.valueOf(this.multipartUploadThreshold), String.valueOf(this.connectTimeout),
+                    String.valueOf(this.readTimeout), String.valueOf(this.writeTimeout),
+                    String.valueOf(this.retryCount)));
+            this.fingerprint = fingerprint;
         }
+        return fingerprint;
+    }
 
-        if (apiDomain != null && !Configuration.defaultApiHost.equals(apiDomain)) {
-            Configuration.defaultApiHost = apiDomain;
-        } else if (apiDomain == null) {
-            Configuration.defaultApiHost = DEFAULT_API_HOST;
+    @Nonnull
+    Auth createAuth() {
+        final Auth auth = Auth.create(this.accessKey, this.secretKey.getPlainText());
+        if (auth == null) {
+            throw new RuntimeException("Failed to create Auth");
         }
+        return auth;
+    }
 
-        final Configuration config = new Configuration();
+    // Built once per configuration and shared by every thread, so it must never be mutated afterwards; hosts are
+    // carried by the Region instead of the JVM wide Configuration.default*Host statics.
+    @Nonnull
+    Configuration createConfiguration() {
+        final Configuration config = new Configuration(createRegion(this.upDomain, this.rsDomain, this.rsfDomain,
+                this.ucDomain, this.apiDomain));
         config.resumableUploadAPIVersion = ResumableUploadAPIVersion.V2;
         config.resumableUploadAPIV2BlockSize = this.multipartUploadPartSize * 1024 * 1024;
         config.resumableUploadMaxConcurrentTaskCount = this.multipartUploadConcurrency;
@@ -116,32 +162,39 @@ public final class QiniuConfig implements Serializable, QiniuConfigurable {
         config.writeTimeout = this.writeTimeout;
         config.useHttpsDomains = this.useHTTPs;
         config.retryMax = this.retryCount;
-        config.region = mayCreateRegion(upDomain, rsDomain, rsfDomain, apiDomain);
         return config;
     }
 
-    private Region mayCreateRegion(final String upDomain, final String rsDomain, final String rsfDomain,
-            final String apiDomain) {
-        boolean returnsNull = true;
+    @CheckForNull
+    static Region createRegion(@CheckForNull String upDomain, @CheckForNull String rsDomain,
+            @CheckForNull String rsfDomain, @CheckForNull String ucDomain, @CheckForNull String apiDomain) {
+        upDomain = Util.fixEmptyAndTrim(upDomain);
+        rsDomain = Util.fixEmptyAndTrim(rsDomain);
+        rsfDomain = Util.fixEmptyAndTrim(rsfDomain);
+        ucDomain = Util.fixEmptyAndTrim(ucDomain);
+        apiDomain = Util.fixEmptyAndTrim(apiDomain);
+
+        if (upDomain == null && rsDomain == null && rsfDomain == null && apiDomain == null) {
+            if (ucDomain != null) {
+                return Region.autoRegion(ucDomain);
+            }
+            return null;
+        }
         Region.Builder regionBuilder = new Region.Builder();
         if (upDomain != null) {
             regionBuilder = regionBuilder.accUpHost(upDomain).srcUpHost(upDomain);
-            returnsNull = false;
         }
         if (rsDomain != null) {
             regionBuilder = regionBuilder.rsHost(rsDomain);
-            returnsNull = false;
         }
         if (rsfDomain != null) {
             regionBuilder = regionBuilder.rsfHost(rsfDomain);
-            returnsNull = false;
         }
         if (apiDomain != null) {
             regionBuilder = regionBuilder.apiHost(apiDomain);
-            returnsNull = false;
         }
-        if (returnsNull) {
-            return null;
+        if (ucDomain != null) {
+            regionBuilder = regionBuilder.ucHost(ucDomain);
         }
         return regionBuilder.build();
     }
@@ -208,10 +261,57 @@ public final class QiniuConfig implements Serializable, QiniuConfigurable {
         return this.applyForAllJobs;
     }
 
+    public boolean isIncrementalArchive() {
+        return this.incrementalArchive;
+    }
+
+    public boolean isContentAddressableStorage() {
+        return this.contentAddressableStorage;
+    }
+
+    public boolean isPackSmallFiles() {
+        return this.packSmallFiles;
+    }
+
+    public boolean isMemoryMappedIndex() {
+        return this.memoryMappedIndex;
+    }
+
+    public int getDownloadCacheSize() {
+        return this.downloadCacheSize;
+    }
+
+    @Nonnull
+    public String getCompressedFiles() {
+        return Util.fixNull(this.compressedFiles);
+    }
+
     public int getFileType() {
         return this.fileType;
     }
 
+    // Configurations saved before the setting existed are loaded with 0
+    public int getUploadConcurrency() {
+        return this.uploadConcurrency > 0 ? this.uploadConcurrency : DEFAULT_UPLOAD_CONCURRENCY;
+    }
+
+    public int getUploadBandwidthLimit() {
+        return this.uploadBandwidthLimit;
+    }
+
+    public int getUploadRequestRateLimit() {
+        return this.uploadRequestRateLimit;
+    }
+
+    @Nonnull
+    public String getLabelUploadLimits() {
+        return Util.fixNull(this.labelUploadLimits);
+    }
+
+    public boolean isAdaptiveMultipartUpload() {
+        return this.adaptiveMultipartUpload;
+    }
+
     public int getMultipartUploadConcurrency() {
         return this.multipartUploadConcurrency;
     }
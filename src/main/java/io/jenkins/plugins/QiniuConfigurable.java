@@ -41,8 +41,32 @@ interface QiniuConfigurable {
 
     public boolean isApplyForAllJobs();
 
+    public boolean isIncrementalArchive();
+
+    public boolean isContentAddressableStorage();
+
+    public boolean isPackSmallFiles();
+
+    public boolean isMemoryMappedIndex();
+
+    public int getDownloadCacheSize();
+
+    @Nonnull
+    public String getCompressedFiles();
+
     public int getFileType();
 
+    public int getUploadConcurrency();
+
+    public int getUploadBandwidthLimit();
+
+    public int getUploadRequestRateLimit();
+
+    @Nonnull
+    public String getLabelUploadLimits();
+
+    public boolean isAdaptiveMultipartUpload();
+
     public int getMultipartUploadConcurrency();
 
     public int getMultipartUploadPartSize();
@@ -0,0 +1,206 @@
+package io.jenkins.plugins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import com.qiniu.common.QiniuException;
+import com.qiniu.http.Response;
+import com.qiniu.storage.BucketManager;
+import com.qiniu.storage.UploadManager;
+import com.qiniu.storage.model.BatchStatus;
+import com.qiniu.storage.model.FileInfo;
+import com.qiniu.util.StringMap;
+
+import jenkins.util.Timer;
+
+@Restricted(NoExternalUse.class)
+final class QiniuContentStore {
+    private static final Logger LOG = Logger.getLogger(QiniuContentStore.class.getName());
+    private static final String ROOT = ".qiniu-cas" + QiniuFileSystem.SEPARATOR;
+    private static final String BLOBS = "blobs" + QiniuFileSystem.SEPARATOR;
+    private static final String REFS = "refs" + QiniuFileSystem.SEPARATOR;
+    private static final String CLOCK = "clock";
+    // Put times are counted in units of 100 nanoseconds
+    private static final long GRACE_PERIOD = TimeUnit.HOURS.toMillis(1) * 10000;
+    private static final AtomicBoolean garbageCollectionScheduled = new AtomicBoolean();
+
+    private QiniuContentStore() {
+    }
+
+    @Nonnull
+    private static String getRootPrefix(@Nonnull final QiniuConfig config) {
+        String prefix = config.getObjectNamePrefix();
+        if (!prefix.isEmpty() && !prefix.endsWith(QiniuFileSystem.SEPARATOR)) {
+            prefix += QiniuFileSystem.SEPARATOR;
+        }
+        return prefix + ROOT;
+    }
+
+    @Nonnull
+    static String getBlobObjectName(@Nonnull final QiniuConfig config, @Nonnull final String etag) {
+        return getRootPrefix(config) + BLOBS + etag;
+    }
+
+    @Nonnull
+    private static String getReferenceObjectName(@Nonnull final QiniuConfig config,
+            @Nonnull final String objectNamePrefix) {
+        final String rootPrefix = getRootPrefix(config);
+        String configPrefix = rootPrefix.substring(0, rootPrefix.length() - ROOT.length());
+        String buildPrefix = objectNamePrefix;
+        if (buildPrefix.startsWith(configPrefix)) {
+            buildPrefix = buildPrefix.substring(configPrefix.length());
+        }
+        while (buildPrefix.endsWith(QiniuFileSystem.SEPARATOR)) {
+            buildPrefix = buildPrefix.substring(0, buildPrefix.length() - 1);
+        }
+        return rootPrefix + REFS + buildPrefix;
+    }
+
+    @Nonnull
+    private static String getObjectNamePrefixByReference(@Nonnull final QiniuConfig config,
+            @Nonnull final String referenceObjectName) {
+        final String rootPrefix = getRootPrefix(config);
+        final String configPrefix = rootPrefix.substring(0, rootPrefix.length() - ROOT.length());
+        return configPrefix + referenceObjectName.substring((rootPrefix + REFS).length())
+                + QiniuFileSystem.SEPARATOR;
+    }
+
+    static void addReference(@Nonnull final QiniuConfig config, @Nonnull final UploadManager uploadManager,
+            @Nonnull final String objectNamePrefix) throws IOException {
+        final String objectName = getReferenceObjectName(config, objectNamePrefix);
+        final String uploadToken = config.getAuth().uploadToken(config.getBucketName(), objectName, 24 * 3600,
+                new StringMap().put("fileType", config.getFileType()));
+        uploadManager.put("{}".getBytes("UTF-8"), objectName, uploadToken, null, null, true);
+    }
+
+    static void removeReference(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix)
+            throws IOException {
+        try {
+            config.getBucketManager().delete(config.getBucketName(),
+                    getReferenceObjectName(config, objectNamePrefix));
+        } catch (QiniuException e) {
+            if (e.code() != 612) {
+                throw e;
+            }
+        }
+    }
+
+    @Nonnull
+    static Set<String> findMissingBlobs(@Nonnull final QiniuConfig config, @Nonnull final Set<String> etags,
+            @Nonnull final QiniuRateLimiter rateLimiter) throws IOException, InterruptedException {
+        final BucketManager bucketManager = config.getBucketManager();
+        final Set<String> missingEtags = new HashSet<>();
+        final List<String> batchEtags = new ArrayList<>(1000);
+        for (String etag : etags) {
+            batchEtags.add(etag);
+            if (batchEtags.size() >= 1000) {
+                rateLimiter.acquire(0, 1);
+                findMissingBlobs(config, bucketManager, batchEtags, missingEtags);
+                batchEtags.clear();
+            }
+        }
+        if (!batchEtags.isEmpty()) {
+            rateLimiter.acquire(0, 1);
+            findMissingBlobs(config, bucketManager, batchEtags, missingEtags);
+        }
+        return missingEtags;
+    }
+
+    private static void findMissingBlobs(@Nonnull final QiniuConfig config, @Nonnull final BucketManager bucketManager,
+            @Nonnull final List<String> etags, @Nonnull final Set<String> missingEtags) throws IOException {
+        final BucketManager.BatchOperations batch = new BucketManager.BatchOperations();
+        for (String etag : etags) {
+            batch.addStatOps(config.getBucketName(), getBlobObjectName(config, etag));
+        }
+        final Response response = bucketManager.batch(batch);
+        final BatchStatus[] batchStatusList = response.jsonToObject(BatchStatus[].class);
+        for (int i = 0; i < batchStatusList.length; i++) {
+            final BatchStatus status = batchStatusList[i];
+            if (status.code == 612) {
+                missingEtags.add(etags.get(i));
+            } else if (status.code != 200) {
+                throw new IOException(String.format("Stat error %s: %s", etags.get(i), QiniuUtils.getError(status)));
+            }
+        }
+    }
+
+    static void scheduleGarbageCollection(@Nonnull final QiniuConfig config) {
+        if (!garbageCollectionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        Timer.get().schedule(() -> {
+            garbageCollectionScheduled.set(false);
+            try {
+                collectGarbage(config);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Qiniu content store garbage collection failed", e);
+            }
+        }, 1, TimeUnit.MINUTES);
+    }
+
+    // Mark and sweep. Builds upload their manifest and reference before any blob, and references registered
+    // while blobs are being listed are marked again, so blobs of archives in progress are kept. Only blobs put
+    // well before the collection started are swept; the start is taken from the server, which also sets the put
+    // times, since the clock of the controller may be off.
+    static void collectGarbage(@Nonnull final QiniuConfig config) throws IOException {
+        final BucketManager bucketManager = config.getBucketManager();
+        final String bucketName = config.getBucketName();
+        final String rootPrefix = getRootPrefix(config);
+        final long startTime = getServerTime(config) - GRACE_PERIOD;
+        LOG.log(Level.INFO, "QiniuContentStore::collectGarbage(): {0}", rootPrefix);
+
+        final Set<String> referencedBlobs = new HashSet<>();
+        markReferencedBlobs(config, Long.MIN_VALUE, referencedBlobs);
+
+        final List<String> unreferencedBlobs = new ArrayList<>();
+        QiniuUtils.listPrefix(bucketManager, bucketName, rootPrefix + BLOBS, (FileInfo fileInfo) -> {
+            if (fileInfo.putTime < startTime && !referencedBlobs.contains(fileInfo.key)) {
+                unreferencedBlobs.add(fileInfo.key);
+            }
+        });
+
+        markReferencedBlobs(config, startTime, referencedBlobs);
+        unreferencedBlobs.removeIf(referencedBlobs::contains);
+
+        QiniuUtils.deleteKeys(bucketManager, bucketName, unreferencedBlobs);
+        LOG.log(Level.INFO, "QiniuContentStore::collectGarbage(): {0} blobs deleted", unreferencedBlobs.size());
+    }
+
+    // The put time of an object written just now
+    private static long getServerTime(@Nonnull final QiniuConfig config) throws IOException {
+        final String objectName = getRootPrefix(config) + CLOCK;
+        final String uploadToken = config.getAuth().uploadToken(config.getBucketName(), objectName, 3600,
+                new StringMap().put("fileType", config.getFileType()));
+        config.getUploadManager().put("{}".getBytes("UTF-8"), objectName, uploadToken, null, null, true);
+        return config.getBucketManager().stat(config.getBucketName(), objectName).putTime;
+    }
+
+    private static void markReferencedBlobs(@Nonnull final QiniuConfig config, final long referencedSince,
+            @Nonnull final Set<String> referencedBlobs) throws IOException {
+        final String refsPrefix = getRootPrefix(config) + REFS;
+        QiniuUtils.listPrefix(config.getBucketManager(), config.getBucketName(), refsPrefix,
+                (FileInfo reference) -> {
+                    if (reference.putTime < referencedSince) {
+                        return;
+                    }
+                    final String objectNamePrefix = getObjectNamePrefixByReference(config, reference.key);
+                    final int flags = QiniuManifest.load(config, objectNamePrefix,
+                            (QiniuManifest.Entry entry) -> referencedBlobs.add(entry.objectName));
+                    if (flags == QiniuManifest.NOT_FOUND) {
+                        LOG.log(Level.WARNING, "QiniuContentStore: manifest of {0} is missing", objectNamePrefix);
+                    }
+                });
+    }
+}
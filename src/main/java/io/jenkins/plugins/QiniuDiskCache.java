@@ -0,0 +1,220 @@
+package io.jenkins.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import hudson.Util;
+import jenkins.model.Jenkins;
+
+// A byte bounded LRU cache of object bodies on the controller disk. Artifacts never change under the same key, so
+// a cached file is only checked against the expected size. An object is stored the second time it is read, and
+// concurrent misses of the same object share one download.
+@Restricted(NoExternalUse.class)
+final class QiniuDiskCache {
+    private static final Logger LOG = Logger.getLogger(QiniuDiskCache.class.getName());
+    static final String DIRECTORY_NAME = "qiniu-download-cache";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int MAX_ENTRY_FRACTION = 8;
+    private static final int ADMISSION_HISTORY_SIZE = 4096;
+    @CheckForNull
+    private static QiniuDiskCache instance;
+
+    @Nonnull
+    private final File directory;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Boolean> admissionHistory = new LinkedHashMap<String, Boolean>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+            return this.size() > ADMISSION_HISTORY_SIZE;
+        }
+    };
+    private final ConcurrentMap<String, CompletableFuture<File>> downloads = new ConcurrentHashMap<>();
+    private long totalSize;
+
+    private QiniuDiskCache(@Nonnull final File directory) {
+        this.directory = directory;
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (file.getName().endsWith(TEMPORARY_SUFFIX)) {
+                if (!file.delete()) {
+                    LOG.log(Level.WARNING, "QiniuDiskCache::QiniuDiskCache(): failed to delete {0}", file);
+                }
+            } else if (file.isFile()) {
+                this.entries.put(file.getName(), file.length());
+                this.totalSize += file.length();
+            }
+        }
+    }
+
+    @Nonnull
+    static InputStream open(@Nonnull final QiniuConfig config, @Nonnull final String key, final long size,
+            @Nonnull final Loader loader) throws IOException {
+        final long maxSize = config.getDownloadCacheSize() * 1024L * 1024L;
+        // QiniuFile is also opened on agents, which read directly
+        final Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null || maxSize <= 0 || size > maxSize / MAX_ENTRY_FRACTION) {
+            return loader.open();
+        }
+        return getInstance(jenkins).open(Util.getDigestOf(key), size, maxSize, loader);
+    }
+
+    @Nonnull
+    private static synchronized QiniuDiskCache getInstance(@Nonnull final Jenkins jenkins) throws IOException {
+        if (instance == null) {
+            final File directory = new File(jenkins.getRootDir(), DIRECTORY_NAME);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Failed to create " + directory);
+            }
+            instance = new QiniuDiskCache(directory);
+        }
+        return instance;
+    }
+
+    @Nonnull
+    private InputStream open(@Nonnull final String name, final long size, final long maxSize,
+            @Nonnull final Loader loader) throws IOException {
+        final File file = new File(this.directory, name);
+        boolean admitted = true;
+        synchronized (this) {
+            final Long cachedSize = this.entries.get(name);
+            if (cachedSize == null) {
+                if (this.admissionHistory.remove(name) == null) {
+                    this.admissionHistory.put(name, Boolean.TRUE);
+                    admitted = false;
+                }
+            } else if (cachedSize == size) {
+                try {
+                    final InputStream in = new FileInputStream(file);
+                    file.setLastModified(System.currentTimeMillis());
+                    return in;
+                } catch (FileNotFoundException e) {
+                    this.remove(name);
+                }
+            } else {
+                this.remove(name);
+            }
+        }
+        if (!admitted) {
+            return loader.open();
+        }
+        try {
+            return new FileInputStream(this.download(name, file, size, maxSize, loader));
+        } catch (FileNotFoundException e) {
+            // Evicted again before it could be opened
+            return loader.open();
+        }
+    }
+
+    @Nonnull
+    private File download(@Nonnull final String name, @Nonnull final File file, final long size, final long maxSize,
+            @Nonnull final Loader loader) throws IOException {
+        CompletableFuture<File> future = this.downloads.get(name);
+        if (future == null) {
+            final CompletableFuture<File> newFuture = new CompletableFuture<>();
+            future = this.downloads.putIfAbsent(name, newFuture);
+            if (future == null) {
+                future = newFuture;
+                try {
+                    this.store(name, file, size, maxSize, loader);
+                    newFuture.complete(file);
+                } catch (IOException | RuntimeException e) {
+                    newFuture.completeExceptionally(e);
+                } finally {
+                    this.downloads.remove(name, newFuture);
+                }
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void store(@Nonnull final String name, @Nonnull final File file, final long size, final long maxSize,
+            @Nonnull final Loader loader) throws IOException {
+        final File temporaryFile = File.createTempFile(name, TEMPORARY_SUFFIX, this.directory);
+        try {
+            try (InputStream in = loader.open()) {
+                Files.copy(in, temporaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (temporaryFile.length() != size) {
+                throw new IOException("Downloaded " + temporaryFile.length() + " bytes instead of " + size);
+            }
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+        synchronized (this) {
+            final Long previousSize = this.entries.put(name, size);
+            this.totalSize += size - (previousSize != null ? previousSize : 0);
+            this.evict(maxSize);
+        }
+        LOG.log(Level.INFO, "QiniuDiskCache::store(): {0}, {1} bytes", new Object[] { name, size });
+    }
+
+    private void evict(final long maxSize) {
+        final Iterator<Map.Entry<String, Long>> iterator = this.entries.entrySet().iterator();
+        while (this.totalSize > maxSize && iterator.hasNext()) {
+            final Map.Entry<String, Long> entry = iterator.next();
+            iterator.remove();
+            this.totalSize -= entry.getValue();
+            this.delete(entry.getKey());
+        }
+    }
+
+    private void remove(@Nonnull final String name) {
+        final Long size = this.entries.remove(name);
+        if (size != null) {
+            this.totalSize -= size;
+        }
+        this.delete(name);
+    }
+
+    private void delete(@Nonnull final String name) {
+        final File file = new File(this.directory, name);
+        if (file.exists() && !file.delete()) {
+            LOG.log(Level.WARNING, "QiniuDiskCache::delete(): failed to delete {0}", file);
+        }
+    }
+
+    @FunctionalInterface
+    static interface Loader {
+        @Nonnull
+        InputStream open() throws IOException;
+    }
+}
@@ -7,8 +7,10 @@ import java.io.ObjectOutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,64 +20,103 @@ import javax.annotation.Nonnull;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
-import hudson.Util;
-import io.jenkins.plugins.QiniuArtifactManagerFactory.CannotGetDownloadDomain;
-import io.jenkins.plugins.QiniuFileSystem.InvalidPathError;
 import jenkins.util.VirtualFile;
 
 @Restricted(NoExternalUse.class)
 public final class QiniuFile extends VirtualFile {
     private static final Logger LOG = Logger.getLogger(QiniuFile.class.getName());
+    private static final int UNRESOLVED = -1;
 
     private String objectName, normalizedObjectName;
 
     @Nonnull
     private QiniuFileSystem qiniuFileSystem;
+    @Nonnull
+    private transient QiniuPath path;
+    // The node this file resolved to, valid while the tree is not modified. Files created by list() or child()
+    // start from their node or their parent directory, so they never walk the tree from the root again.
+    @CheckForNull
+    private transient QiniuFileSystem.Node node;
+    @CheckForNull
+    private transient QiniuFileSystem.DirectoryNode parentNode;
+    private transient int modCount, parentModCount;
 
     public QiniuFile(@Nonnull final QiniuFileSystem qiniuFileSystem, final String objectName) {
         this.qiniuFileSystem = qiniuFileSystem;
         this.objectName = objectName;
         this.normalizedObjectName = this.getNormalizedObjectName();
+        this.path = QiniuPath.of(this.normalizedObjectName);
+        this.modCount = UNRESOLVED;
     }
 
-    @Nonnull
-    public Path getPath() {
-        try {
-            String objectName = "";
-            if (this.normalizedObjectName != null) {
-                objectName = this.normalizedObjectName.toString();
-            }
-            final String objectNamePrefix = this.qiniuFileSystem.getObjectNamePrefix();
-            if (!objectNamePrefix.isEmpty()) {
-                final Path path = QiniuFileSystem
-                        .fromObjectNameToFileSystemPath(this.qiniuFileSystem.getObjectNamePrefix());
-                return path.resolve(QiniuFileSystem.fromObjectNameToFileSystemPath(objectName));
+    private QiniuFile(@Nonnull final QiniuFileSystem qiniuFileSystem, @Nonnull final QiniuPath path,
+            @CheckForNull final QiniuFileSystem.Node node, @CheckForNull final QiniuFileSystem.DirectoryNode parentNode,
+            final int modCount) {
+        this.qiniuFileSystem = qiniuFileSystem;
+        this.path = path;
+        this.objectName = path.isRoot() ? null : path.toString();
+        this.normalizedObjectName = this.objectName;
+        this.node = node;
+        this.parentNode = parentNode;
+        this.modCount = node != null ? modCount : UNRESOLVED;
+        this.parentModCount = modCount;
+    }
+
+    private QiniuFile(@Nonnull final QiniuFileSystem qiniuFileSystem, @Nonnull final QiniuPath path) {
+        this(qiniuFileSystem, path, null, null, UNRESOLVED);
+    }
+
+    @CheckForNull
+    private QiniuFileSystem.Node getNode() throws IOException {
+        final int modCount = this.qiniuFileSystem.getModCount();
+        if (this.modCount != modCount) {
+            final String name = this.path.getFileName();
+            if (name == null) {
+                this.node = this.qiniuFileSystem.getRootNode();
+            } else if (this.parentNode != null && this.parentModCount == modCount) {
+                this.node = this.parentNode.getByName(name);
             } else {
-                return QiniuFileSystem.fromObjectNameToFileSystemPath(objectName);
+                this.node = this.qiniuFileSystem.getNodeByPath(this.path, false, false);
             }
-        } catch (InvalidPathError e) {
-            throw new RuntimeException(e);
+            this.parentNode = null;
+            this.modCount = modCount;
         }
+        return this.node;
+    }
+
+    @Nonnull
+    QiniuPath getPath() {
+        return QiniuPath.of(this.qiniuFileSystem.getObjectNamePrefix()).resolve(this.path);
     }
 
     @Nonnull
     @Override
     public String getName() {
         LOG.log(Level.INFO, "QiniuFile::{0}::getName()", this.normalizedObjectName);
-        final Path path = getPath().getFileName();
-        if (path != null) {
-            return path.toString();
+        String name = this.path.getFileName();
+        if (name == null) {
+            name = this.getPath().getFileName();
+        }
+        if (name != null) {
+            return name;
         } else {
             return "";
         }
     }
 
+    // Packed and compressed files have no object of their own to download, so they are only identified by a
+    // qiniu://<bucket>/<path> URI which cannot be fetched.
     @Nonnull
     @Override
     public URI toURI() {
         LOG.log(Level.INFO, "QiniuFile::{0}::toURI()", this.normalizedObjectName);
         try {
-            return this.toExternalURL().toURI();
+            final URL url = this.toExternalURL();
+            if (url == null) {
+                return new URI("qiniu", this.qiniuFileSystem.getConfig().getBucketName(),
+                        QiniuFileSystem.SEPARATOR + this.getPath().toString(), null, null);
+            }
+            return url.toURI();
         } catch (URISyntaxException e) {
             throw new RuntimeException(e);
         } catch (IOException e) {
@@ -83,51 +124,56 @@ public final class QiniuFile extends VirtualFile {
         }
     }
 
-    @Nonnull
+    @CheckForNull
     @Override
     public URL toExternalURL() throws IOException {
         LOG.log(Level.INFO, "QiniuFile::{0}::toExternalURL()", this.normalizedObjectName);
-        final QiniuConfig config = this.qiniuFileSystem.getConfig();
-        String scheme = "http";
-        if (config.isUseHTTPs()) {
-            scheme = "https";
+        String objectName = null;
+        final QiniuIndex index = this.qiniuFileSystem.getIndex();
+        if (index != null) {
+            final int i = index.find(this.path.toString());
+            if (i >= 0) {
+                if (index.isPacked(i) || index.isCompressed(i)) {
+                    return null;
+                }
+                objectName = index.getObjectName(i);
+            }
         }
-
-        String objectName = QiniuFileSystem.fromFileSystemPathToObjectName(this.getPath());
-        if (!objectName.startsWith(QiniuFileSystem.SEPARATOR)) {
-            objectName = QiniuFileSystem.SEPARATOR + objectName;
+        final QiniuFileSystem.FileNode fileNode = index == null ? this.getFileNode() : null;
+        if (fileNode != null) {
+            if (fileNode.isPacked() || fileNode.isCompressed()) {
+                return null;
+            }
+            objectName = fileNode.getObjectName();
         }
-
-        String downloadDomain = Util.fixEmptyAndTrim(config.getDownloadDomain());
-        if (downloadDomain == null) {
-            downloadDomain = config.getBucketManager().getDefaultIoSrcHost(config.getBucketName());
+        if (objectName == null) {
+            objectName = this.getPath().toString();
         }
-        if (downloadDomain == null) {
-            throw new CannotGetDownloadDomain("The download domain is not set");
-        } else {
-            int protocolIndex = downloadDomain.indexOf("://");
-            if (protocolIndex != -1) {
-                downloadDomain = downloadDomain.substring(protocolIndex + "://".length());
+        return QiniuUtils.getDownloadURL(this.qiniuFileSystem.getConfig(), objectName);
+    }
+
+    @CheckForNull
+    private QiniuFileSystem.FileNode getFileNode() throws IOException {
+        if (this.normalizedObjectName != null) {
+            final QiniuFileSystem.Node node = this.getNode();
+            if (node != null && node.isFile()) {
+                return (QiniuFileSystem.FileNode) node;
             }
         }
-        final String url = new URL(scheme, downloadDomain, objectName).toString();
-        LOG.log(Level.INFO, "QiniuFile::{0}::toExternalURL() url={0}", url);
-        return new URL(this.qiniuFileSystem.getConfig().getAuth().privateDownloadUrl(url, 180));
+        return null;
     }
 
     @CheckForNull
     @Override
     public VirtualFile getParent() {
         LOG.log(Level.INFO, "QiniuFile::{0}::getParent()", this.normalizedObjectName);
-        try {
-            if (this.normalizedObjectName != null) {
-                final Path parentPath = QiniuFileSystem.fromObjectNameToFileSystemPath(this.normalizedObjectName)
-                        .getParent();
-                return new QiniuFile(this.qiniuFileSystem, QiniuFileSystem.fromFileSystemPathToObjectName(parentPath));
-            } else {
-                return null;
-            }
-        } catch (InvalidPathError e) {
+        final QiniuPath parentPath = this.path.getParent();
+        final QiniuFileSystem.Node node = this.modCount == this.qiniuFileSystem.getModCount() ? this.node : null;
+        if (parentPath != null && node != null) {
+            return new QiniuFile(this.qiniuFileSystem, parentPath, node.getParentNode(), null, this.modCount);
+        } else if (parentPath != null) {
+            return new QiniuFile(this.qiniuFileSystem, parentPath);
+        } else {
             return null;
         }
     }
@@ -136,10 +182,12 @@ public final class QiniuFile extends VirtualFile {
     public boolean isDirectory() throws IOException {
         LOG.log(Level.INFO, "QiniuFile::{0}::isDirectory()", this.normalizedObjectName);
         this.qiniuFileSystem.mayThrowIOException();
+        final QiniuIndex index = this.qiniuFileSystem.getIndex();
+        if (index != null) {
+            return index.isDirectory(this.path.toString());
+        }
         if (this.normalizedObjectName != null) {
-            final QiniuFileSystem.Node node = this.qiniuFileSystem
-                    .getNodeByPath(QiniuFileSystem.fromObjectNameToFileSystemPath(this.normalizedObjectName), false,
-                            false);
+            final QiniuFileSystem.Node node = this.getNode();
             if (node != null) {
                 return node.isDirectory();
             } else {
@@ -154,10 +202,12 @@ public final class QiniuFile extends VirtualFile {
     public boolean isFile() throws IOException {
         LOG.log(Level.INFO, "QiniuFile::{0}::isFile()", this.normalizedObjectName);
         this.qiniuFileSystem.mayThrowIOException();
+        final QiniuIndex index = this.qiniuFileSystem.getIndex();
+        if (index != null && this.normalizedObjectName != null) {
+            return index.find(this.path.toString()) >= 0;
+        }
         if (this.normalizedObjectName != null) {
-            final QiniuFileSystem.Node node = this.qiniuFileSystem
-                    .getNodeByPath(QiniuFileSystem.fromObjectNameToFileSystemPath(this.normalizedObjectName), false,
-                            false);
+            final QiniuFileSystem.Node node = this.getNode();
             if (node != null) {
                 return node.isFile();
             } else {
@@ -173,9 +223,7 @@ public final class QiniuFile extends VirtualFile {
         LOG.log(Level.INFO, "QiniuFile::{0}::exists()", this.normalizedObjectName);
         this.qiniuFileSystem.mayThrowIOException();
         if (this.normalizedObjectName != null) {
-            this.qiniuFileSystem.getNodeByPath(
-                    QiniuFileSystem.fromObjectNameToFileSystemPath(this.normalizedObjectName), false,
-                    false);
+            this.getNode();
         }
         return true;
     }
@@ -185,33 +233,85 @@ public final class QiniuFile extends VirtualFile {
     public VirtualFile[] list() throws IOException {
         LOG.log(Level.INFO, "QiniuFile::{0}::list()", this.normalizedObjectName);
         this.qiniuFileSystem.mayThrowIOException();
-        QiniuFileSystem.DirectoryNode currentNode = this.qiniuFileSystem.getRootNode();
-        if (this.normalizedObjectName != null) {
-            currentNode = this.qiniuFileSystem
-                    .getDirectoryNodeByPath(QiniuFileSystem.fromObjectNameToFileSystemPath(this.normalizedObjectName),
-                            false);
+        final QiniuIndex index = this.qiniuFileSystem.getIndex();
+        if (index != null) {
+            final List<String> names = new ArrayList<>();
+            index.list(this.path.toString(), names);
+            final VirtualFile[] virtualFiles = new VirtualFile[names.size()];
+            for (int i = 0; i < virtualFiles.length; i++) {
+                virtualFiles[i] = new QiniuFile(this.qiniuFileSystem, this.path.resolve(names.get(i)));
+            }
+            return virtualFiles;
+        }
+        final int modCount = this.qiniuFileSystem.getModCount();
+        final QiniuFileSystem.Node node = this.getNode();
+        final QiniuFileSystem.DirectoryNode currentNode;
+        if (node != null && node.isDirectory()) {
+            currentNode = (QiniuFileSystem.DirectoryNode) node;
+        } else {
+            currentNode = this.qiniuFileSystem.getDirectoryNodeByPath(this.path, false);
         }
         final Collection<QiniuFileSystem.Node> childrenNodes = currentNode.getChildrenNodes();
         VirtualFile[] virtualFiles = new VirtualFile[childrenNodes.size()];
         int i = 0;
         for (QiniuFileSystem.Node childNode : childrenNodes) {
-            String objectName;
-            if (this.normalizedObjectName != null) {
-                objectName = QiniuFileSystem.fromFileSystemPathToObjectName(QiniuFileSystem
-                        .fromObjectNameToFileSystemPath(this.normalizedObjectName).resolve(childNode.getNodeName()));
-            } else {
-                objectName = childNode.getNodeName();
-            }
-            virtualFiles[i] = new QiniuFile(this.qiniuFileSystem, objectName);
+            virtualFiles[i] = new QiniuFile(this.qiniuFileSystem, this.path.resolve(childNode.getNodeName()),
+                    childNode, null, modCount);
             i++;
         }
         return virtualFiles;
     }
 
+    @Nonnull
+    @Override
+    public Collection<String> list(@Nonnull final String includes, @CheckForNull final String excludes,
+            final boolean useDefaultExcludes) throws IOException {
+        LOG.log(Level.INFO, "QiniuFile::{0}::list({1}, {2}, {3})",
+                new Object[] { this.normalizedObjectName, includes, excludes, useDefaultExcludes });
+        this.qiniuFileSystem.mayThrowIOException();
+        final QiniuGlob glob = new QiniuGlob(includes, excludes != null ? excludes : "", useDefaultExcludes);
+        final List<String> paths = new ArrayList<>();
+        final QiniuIndex index = this.qiniuFileSystem.getIndex();
+        if (index != null) {
+            index.forEachFile(this.path.toString(), (String path) -> {
+                if (glob.matches(path)) {
+                    paths.add(path);
+                }
+            });
+            return paths;
+        }
+        final QiniuFileSystem.Node node = this.getNode();
+        if (node != null && node.isDirectory()) {
+            collect((QiniuFileSystem.DirectoryNode) node, glob, new String[16], 0, paths);
+        }
+        return paths;
+    }
+
+    // One pass over the tree with the segments of the current directory kept in a reused array; subtrees which
+    // no include pattern can reach are never loaded.
+    private static void collect(@Nonnull final QiniuFileSystem.DirectoryNode directoryNode,
+            @Nonnull final QiniuGlob glob, @Nonnull String[] segments, final int depth,
+            @Nonnull final List<String> paths) throws IOException {
+        if (depth == segments.length) {
+            segments = Arrays.copyOf(segments, depth * 2);
+        }
+        for (QiniuFileSystem.Node childNode : directoryNode.getChildrenNodes()) {
+            segments[depth] = childNode.getNodeName();
+            if (childNode.isDirectory()) {
+                if (glob.mayMatchBelow(segments, depth + 1)) {
+                    collect((QiniuFileSystem.DirectoryNode) childNode, glob, segments, depth + 1, paths);
+                }
+            } else if (glob.matches(segments, depth + 1)) {
+                paths.add(String.join(QiniuFileSystem.SEPARATOR, Arrays.asList(segments).subList(0, depth + 1)));
+            }
+        }
+    }
+
     public boolean deleteRecursively() throws IOException {
         LOG.log(Level.INFO, "QiniuFile::{0}::deleteRecursively()", this.normalizedObjectName);
         this.qiniuFileSystem.mayThrowIOException();
-        if (this.qiniuFileSystem.getRootNode().getChildrenCount() == 0) {
+        final QiniuIndex index = this.qiniuFileSystem.getIndex();
+        if (index != null ? index.getCount() == 0 : this.qiniuFileSystem.getRootNode().getChildrenCount() == 0) {
             return false;
         }
         this.qiniuFileSystem.deleteAll();
@@ -222,33 +322,29 @@ public final class QiniuFile extends VirtualFile {
     @Override
     public VirtualFile child(@Nonnull String childName) {
         LOG.log(Level.INFO, "QiniuFile::{0}::child({1})", new Object[] { this.normalizedObjectName, childName });
-        String objectName;
-        try {
-            if (this.normalizedObjectName != null) {
-                objectName = QiniuFileSystem.fromFileSystemPathToObjectName(
-                        QiniuFileSystem.fromObjectNameToFileSystemPath(this.normalizedObjectName).resolve(childName));
-            } else {
-                objectName = childName;
-            }
-            return new QiniuFile(this.qiniuFileSystem, objectName);
-        } catch (InvalidPathError e) {
-            throw new RuntimeException(e);
+        final QiniuPath childPath = this.path.resolve(childName);
+        final QiniuFileSystem.Node node = this.modCount == this.qiniuFileSystem.getModCount() ? this.node : null;
+        if (node != null && node.isDirectory() && this.path.equals(childPath.getParent())) {
+            return new QiniuFile(this.qiniuFileSystem, childPath, null, (QiniuFileSystem.DirectoryNode) node,
+                    this.modCount);
         }
+        return new QiniuFile(this.qiniuFileSystem, childPath);
     }
 
     @Override
     public long length() throws IOException {
         LOG.log(Level.INFO, "QiniuFile::{0}::length()", this.normalizedObjectName);
-        QiniuFileSystem.Node currentNode = this.qiniuFileSystem.getRootNode();
-        if (this.normalizedObjectName != null) {
-            currentNode = this.qiniuFileSystem
-                    .getNodeByPath(QiniuFileSystem.fromObjectNameToFileSystemPath(this.normalizedObjectName), false,
-                            false);
+        final QiniuIndex index = this.qiniuFileSystem.getIndex();
+        if (index != null) {
+            final String path = this.path.toString();
+            final int i = index.find(path);
+            return i >= 0 ? index.getSize(i) : index.list(path, null);
         }
+        final QiniuFileSystem.Node currentNode = this.getNode();
         if (currentNode == null) {
             return 0;
         } else if (currentNode.isFile()) {
-            return ((QiniuFileSystem.FileNode) currentNode).getMetadata().fsize;
+            return ((QiniuFileSystem.FileNode) currentNode).getSize();
         } else {
             return ((QiniuFileSystem.DirectoryNode) currentNode).getChildrenCount();
         }
@@ -257,14 +353,14 @@ public final class QiniuFile extends VirtualFile {
     @Override
     public long lastModified() throws IOException {
         LOG.log(Level.INFO, "QiniuFile::{0}::lastModified()", this.normalizedObjectName);
-        QiniuFileSystem.Node currentNode = this.qiniuFileSystem.getRootNode();
-        if (this.normalizedObjectName != null) {
-            currentNode = this.qiniuFileSystem
-                    .getNodeByPath(QiniuFileSystem.fromObjectNameToFileSystemPath(this.normalizedObjectName), false,
-                            false);
+        final QiniuIndex index = this.qiniuFileSystem.getIndex();
+        if (index != null) {
+            final int i = index.find(this.path.toString());
+            return i >= 0 ? index.getPutTime(i) / 10000 : 0;
         }
+        final QiniuFileSystem.Node currentNode = this.getNode();
         if (currentNode != null && currentNode.isFile()) {
-            return ((QiniuFileSystem.FileNode) currentNode).getMetadata().putTime / 10000;
+            return ((QiniuFileSystem.FileNode) currentNode).getPutTime() / 10000;
         } else {
             return 0;
         }
@@ -273,12 +369,12 @@ public final class QiniuFile extends VirtualFile {
     @Override
     public boolean canRead() throws IOException {
         LOG.log(Level.INFO, "QiniuFile::{0}::canRead()", this.normalizedObjectName);
-        QiniuFileSystem.Node currentNode = this.qiniuFileSystem.getRootNode();
-        if (this.normalizedObjectName != null) {
-            currentNode = this.qiniuFileSystem
-                    .getNodeByPath(QiniuFileSystem.fromObjectNameToFileSystemPath(this.normalizedObjectName), false,
-                            false);
+        final QiniuIndex index = this.qiniuFileSystem.getIndex();
+        if (index != null) {
+            final String path = this.path.toString();
+            return index.find(path) >= 0 || index.isDirectory(path);
         }
+        final QiniuFileSystem.Node currentNode = this.getNode();
         return currentNode != null;
     }
 
@@ -286,20 +382,47 @@ public final class QiniuFile extends VirtualFile {
     @Override
     public InputStream open() throws IOException {
         LOG.log(Level.INFO, "QiniuFile::{0}::open()", this.normalizedObjectName);
+        final QiniuObject object = this.getObject();
+        if (object != null) {
+            final QiniuConfig config = this.qiniuFileSystem.getConfig();
+            return QiniuDiskCache.open(config, object.getCacheKey(config), object.getSize(),
+                    () -> object.open(config));
+        }
         return this.toExternalURL().openStream();
     }
 
+    @CheckForNull
+    private QiniuObject getObject() throws IOException {
+        final QiniuIndex index = this.qiniuFileSystem.getIndex();
+        if (index != null) {
+            final int i = index.find(this.path.toString());
+            if (i < 0) {
+                return null;
+            }
+            return new QiniuObject(index.getObjectName(i), index.isPacked(i) ? index.getPackOffset(i) : 0,
+                    index.getSize(i), index.getPutTime(i), index.isCompressed(i), index.getHash(i));
+        }
+        final QiniuFileSystem.FileNode fileNode = this.getFileNode();
+        if (fileNode == null) {
+            return null;
+        }
+        return new QiniuObject(fileNode.getObjectName(), fileNode.isPacked() ? fileNode.getPackOffset() : 0,
+                fileNode.getSize(), fileNode.getPutTime(), fileNode.isCompressed(), fileNode.getHash());
+    }
+
     private void writeObject(final ObjectOutputStream out) throws IOException {
-        out.writeUTF(this.objectName);
-        out.writeUTF(this.normalizedObjectName);
+        out.writeObject(this.objectName);
+        out.writeObject(this.normalizedObjectName);
         out.writeObject(this.qiniuFileSystem);
         LOG.log(Level.INFO, "QiniuFile::{0}::writeObject()", this.normalizedObjectName);
     }
 
     private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
-        this.objectName = in.readUTF();
-        this.normalizedObjectName = in.readUTF();
+        this.objectName = (String) in.readObject();
+        this.normalizedObjectName = (String) in.readObject();
         this.qiniuFileSystem = (QiniuFileSystem) in.readObject();
+        this.path = QiniuPath.of(this.normalizedObjectName);
+        this.modCount = UNRESOLVED;
         LOG.log(Level.INFO, "QiniuFile::{0}::readObject()", this.normalizedObjectName);
     }
 
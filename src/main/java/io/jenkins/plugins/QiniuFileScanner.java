@@ -0,0 +1,166 @@
+package io.jenkins.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+@Restricted(NoExternalUse.class)
+final class QiniuFileScanner implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOG = Logger.getLogger(QiniuFileScanner.class.getName());
+
+    @Nonnull
+    private final String includes, excludes;
+    private final boolean defaultExcludes;
+    private final boolean caseSensitive;
+
+    QiniuFileScanner(@Nonnull String includes, @Nonnull String excludes, boolean defaultExcludes,
+            boolean caseSensitive) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.defaultExcludes = defaultExcludes;
+        this.caseSensitive = caseSensitive;
+    }
+
+    void scan(@Nonnull final File basedir, @Nonnull final ArtifactConsumer consumer)
+            throws IOException, InterruptedException {
+        this.walk(basedir, consumer, false);
+    }
+
+    // Stops at the first matching file, so the uploader can tell whether there is anything to archive before it
+    // cleans up what an earlier archive step of the build uploaded.
+    boolean hasArtifacts(@Nonnull final File basedir) throws IOException, InterruptedException {
+        return this.walk(basedir, (String filePath, String objectName) -> {
+        }, true);
+    }
+
+    private boolean walk(@Nonnull final File basedir, @Nonnull final ArtifactConsumer consumer,
+            final boolean firstOnly) throws IOException, InterruptedException {
+        final List<String> includePatterns = parsePatterns(this.includes);
+        final List<String> excludePatterns = parsePatterns(this.excludes);
+        if (this.defaultExcludes) {
+            for (String pattern : DirectoryScanner.getDefaultExcludes()) {
+                excludePatterns.add(normalizePattern(pattern));
+            }
+        }
+        if (includePatterns.isEmpty()) {
+            includePatterns.add("**");
+        }
+        final Path basePath = basedir.toPath();
+        final boolean[] found = new boolean[1];
+        try {
+            Files.walkFileTree(basePath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                    new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                            if (dir.equals(basePath)) {
+                                return FileVisitResult.CONTINUE;
+                            }
+                            final String filePath = basePath.relativize(dir).toString();
+                            for (String pattern : includePatterns) {
+                                if (SelectorUtils.matchPatternStart(pattern, filePath, caseSensitive)) {
+                                    return FileVisitResult.CONTINUE;
+                                }
+                            }
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                            if (!attrs.isRegularFile()) {
+                                return FileVisitResult.CONTINUE;
+                            }
+                            final String filePath = basePath.relativize(file).toString();
+                            if (matches(includePatterns, filePath) && !matches(excludePatterns, filePath)) {
+                                String objectName = filePath;
+                                if (QiniuFileSystem.SEPARATOR_CHAR != File.separatorChar) {
+                                    objectName = String.join(QiniuFileSystem.SEPARATOR,
+                                            StringUtils.split(filePath, File.separatorChar));
+                                }
+                                try {
+                                    consumer.accept(filePath, objectName);
+                                } catch (InterruptedException e) {
+                                    throw (IOException) new InterruptedIOException(e.getMessage()).initCause(e);
+                                }
+                                found[0] = true;
+                                if (firstOnly) {
+                                    return FileVisitResult.TERMINATE;
+                                }
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                            if (e instanceof FileSystemLoopException) {
+                                LOG.log(Level.INFO, "QiniuFileScanner::scan() skip symbolic link loop {0}", file);
+                                return FileVisitResult.CONTINUE;
+                            }
+                            throw e;
+                        }
+                    });
+        } catch (InterruptedIOException e) {
+            if (e.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) e.getCause();
+            }
+            throw e;
+        }
+        return found[0];
+    }
+
+    private boolean matches(@Nonnull final List<String> patterns, @Nonnull final String filePath) {
+        for (String pattern : patterns) {
+            if (SelectorUtils.matchPath(pattern, filePath, this.caseSensitive)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nonnull
+    private static List<String> parsePatterns(@Nonnull final String patterns) {
+        final List<String> result = new ArrayList<>();
+        for (String pattern : StringUtils.split(patterns, ", ")) {
+            pattern = pattern.trim();
+            if (!pattern.isEmpty()) {
+                result.add(normalizePattern(pattern));
+            }
+        }
+        return result;
+    }
+
+    @Nonnull
+    private static String normalizePattern(@Nonnull final String pattern) {
+        String normalized = pattern.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+        if (normalized.endsWith(File.separator)) {
+            normalized += "**";
+        }
+        return normalized;
+    }
+
+    @FunctionalInterface
+    static interface ArtifactConsumer {
+        void accept(@Nonnull String filePath, @Nonnull String objectName) throws IOException, InterruptedException;
+    }
+}
@@ -6,13 +6,12 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.nio.file.FileSystems;
-import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -30,8 +29,10 @@ import com.qiniu.storage.model.FileInfo;
 @Restricted(NoExternalUse.class)
 final class QiniuFileSystem implements Serializable {
     private static final Logger LOG = Logger.getLogger(QiniuFileSystem.class.getName());
+    private static final long ESTIMATED_DIRECTORY_SIZE = 128, ESTIMATED_FILE_SIZE = 64;
     static final char SEPARATOR_CHAR = '/';
     static final String SEPARATOR = "/";
+    private static final Pattern FILE_SEPARATOR_PATTERN = Pattern.compile(Pattern.quote(File.separator));
 
     @Nonnull
     private QiniuConfig config;
@@ -41,49 +42,112 @@ final class QiniuFileSystem implements Serializable {
     private DirectoryNode rootNode;
     @Nullable
     private IOException ioException;
+    private boolean hasManifest, contentAddressed, packed;
+    @Nonnull
+    private transient AtomicLong estimatedSize;
+    @CheckForNull
+    private transient QiniuIndex index;
+    private transient volatile int modCount;
 
     QiniuFileSystem(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix) {
         this.config = config;
         this.objectNamePrefix = objectNamePrefix;
-        this.rootNode = new DirectoryNode("", this, null);
+        this.estimatedSize = new AtomicLong();
+        this.rootNode = new DirectoryNode("", this, null, true);
         initNodes();
     }
 
+    private QiniuFileSystem(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix,
+            @Nonnull final QiniuIndex index) {
+        this.config = config;
+        this.objectNamePrefix = objectNamePrefix;
+        this.estimatedSize = new AtomicLong();
+        this.rootNode = new DirectoryNode("", this, null, true);
+        this.index = index;
+        this.hasManifest = index.hasManifest();
+        this.contentAddressed = index.isContentAddressed();
+        this.packed = index.isPacked();
+    }
+
     @Nonnull
     static QiniuFileSystem create(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix) {
         return new QiniuFileSystem(config, objectNamePrefix);
     }
 
+    @Nonnull
+    static QiniuFileSystem create(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix,
+            @Nonnull final QiniuIndex index) {
+        return new QiniuFileSystem(config, objectNamePrefix, index);
+    }
+
     private void initNodes() {
-        LOG.log(Level.INFO, "QiniuFileSystem::{0}::list()", this.objectNamePrefix);
-        final BucketManager bucketManager = this.config.getBucketManager();
-        String prefix = this.objectNamePrefix.toString();
-        if (!prefix.isEmpty() && !prefix.endsWith(SEPARATOR)) {
-            prefix += SEPARATOR;
-        }
         try {
-            QiniuUtils.listPrefix(bucketManager, this.config.getBucketName(), prefix, (FileInfo metadata) -> {
-                final Path path = fromObjectNameToFileSystemPath(this.objectNamePrefix)
-                        .relativize(fromObjectNameToFileSystemPath(metadata.key));
-                LOG.log(Level.INFO, "QiniuFileSystem::{0}::list(), key={1}",
-                        new Object[] { this.objectNamePrefix, path.toString() });
-                this.createFileNodeByPath(path, metadata);
-            });
+            final int flags = QiniuManifest.load(this.config, this.objectNamePrefix,
+                    (QiniuManifest.Entry entry) -> this.createFileNodeByPath(QiniuPath.of(entry.path),
+                            entry.size, entry.putTime, entry.hash, this.getStoredObjectName(entry), entry.offset,
+                            entry.encoding));
+            this.hasManifest = flags != QiniuManifest.NOT_FOUND;
+            this.contentAddressed = this.hasManifest && (flags & QiniuManifest.FLAG_CONTENT_ADDRESSED) != 0;
+            this.packed = this.hasManifest && (flags & QiniuManifest.FLAG_PACKED) != 0;
         } catch (IOException e) {
-            LOG.log(Level.INFO, "QiniuFileSystem::{0}::list() error: {1}", new Object[] { this.objectNamePrefix, e });
+            LOG.log(Level.INFO, "QiniuFileSystem::{0}::load() error: {1}", new Object[] { this.objectNamePrefix, e });
             this.ioException = e;
+            return;
+        }
+        if (this.hasManifest) {
+            LOG.log(Level.INFO, "QiniuFileSystem::{0}::load() done", this.objectNamePrefix);
+            return;
+        }
+        this.rootNode = new DirectoryNode("", this, null, false);
+    }
+
+    @CheckForNull
+    private String getStoredObjectName(@Nonnull final QiniuManifest.Entry entry) {
+        if (entry.objectName.equals(this.getListPrefix() + entry.path)) {
+            return null;
+        }
+        return entry.objectName.intern();
+    }
+
+    @Nonnull
+    String getListPrefix() {
+        if (!this.objectNamePrefix.isEmpty() && !this.objectNamePrefix.endsWith(SEPARATOR)) {
+            return this.objectNamePrefix + SEPARATOR;
         }
-        LOG.log(Level.INFO, "QiniuFileSystem::{0}::list() done", this.objectNamePrefix);
+        return this.objectNamePrefix;
+    }
+
+    // Without a manifest every directory is listed on first access with a "/" delimiter, so only the levels
+    // which are actually browsed are fetched from Qiniu.
+    private void listDirectory(@Nonnull final DirectoryNode directoryNode) throws IOException {
+        final BucketManager bucketManager = this.config.getBucketManager();
+        final String prefix = this.getListPrefix() + directoryNode.getObjectPath();
+        final int prefixLength = prefix.length();
+        LOG.log(Level.INFO, "QiniuFileSystem::{0}::list({1})", new Object[] { this.objectNamePrefix, prefix });
+        QiniuUtils.listDirectory(bucketManager, this.config.getBucketName(), prefix, (FileInfo metadata) -> {
+            final String name = metadata.key.substring(prefixLength);
+            if (!name.isEmpty()) {
+                directoryNode.addChildFileNode(name, metadata.fsize, metadata.putTime, metadata.hash, null, -1,
+                        QiniuManifest.ENCODING_IDENTITY);
+            }
+        }, (String commonPrefix) -> {
+            final String name = commonPrefix.substring(prefixLength, commonPrefix.length() - SEPARATOR.length());
+            if (!name.isEmpty()) {
+                directoryNode.addUnloadedChildDirectoryNode(name);
+            }
+        });
+        LOG.log(Level.INFO, "QiniuFileSystem::{0}::list({1}) done", new Object[] { this.objectNamePrefix, prefix });
     }
 
     @CheckForNull
-    Node getNodeByPath(@Nonnull Path path, boolean createDirectory, boolean createNodeAsDirectory)
-            throws InvalidPathError {
+    Node getNodeByPath(@Nonnull QiniuPath path, boolean createDirectory, boolean createNodeAsDirectory)
+            throws IOException {
         DirectoryNode currentNode = this.rootNode;
         for (int i = 0; i < path.getNameCount(); i++) {
-            final String currentNodeName = path.getName(i).toString();
-            Node newCurrentNode = currentNode.getByName(currentNodeName);
+            final String currentNodeName = path.getName(i);
             if (i < path.getNameCount() - 1) {
+                final Node newCurrentNode = createDirectory ? currentNode.getDirectoryByName(currentNodeName)
+                        : currentNode.getByName(currentNodeName);
                 if (newCurrentNode != null && newCurrentNode.isDirectory()) {
                     currentNode = (DirectoryNode) newCurrentNode;
                 } else if (createDirectory && newCurrentNode == null) {
@@ -91,13 +155,15 @@ final class QiniuFileSystem implements Serializable {
                     LOG.log(Level.INFO, "create directory node: {0}", currentNode.getPath().toString());
                 } else {
                     throw new InvalidPathError("Path " + path.toString() + " is invalid, file "
-                            + path.getName(i).toString() + " is not directory");
+                            + currentNodeName + " is not directory");
                 }
-            } else if (createNodeAsDirectory && newCurrentNode == null) {
-                currentNode = currentNode.addChildDirectoryNode(currentNodeName);
-                LOG.log(Level.INFO, "create directory node: {0}", currentNode.getPath().toString());
-                return currentNode;
             } else {
+                final Node newCurrentNode = currentNode.getByName(currentNodeName);
+                if (createNodeAsDirectory && newCurrentNode == null) {
+                    currentNode = currentNode.addChildDirectoryNode(currentNodeName);
+                    LOG.log(Level.INFO, "create directory node: {0}", currentNode.getPath().toString());
+                    return currentNode;
+                }
                 return newCurrentNode;
             }
         }
@@ -105,7 +171,7 @@ final class QiniuFileSystem implements Serializable {
     }
 
     @Nonnull
-    FileNode getFileNodeByPath(@Nonnull Path path, boolean createDirectory) throws InvalidPathError {
+    FileNode getFileNodeByPath(@Nonnull QiniuPath path, boolean createDirectory) throws IOException {
         final Node node = this.getNodeByPath(path, createDirectory, false);
         if (node != null && node.isFile()) {
             return (FileNode) node;
@@ -116,7 +182,7 @@ final class QiniuFileSystem implements Serializable {
     }
 
     @Nonnull
-    DirectoryNode getDirectoryNodeByPath(@Nonnull Path path, boolean createDirectory) throws InvalidPathError {
+    DirectoryNode getDirectoryNodeByPath(@Nonnull QiniuPath path, boolean createDirectory) throws IOException {
         final Node node = this.getNodeByPath(path, createDirectory, createDirectory);
         if (node != null && node.isDirectory()) {
             return (DirectoryNode) node;
@@ -127,8 +193,8 @@ final class QiniuFileSystem implements Serializable {
     }
 
     @Nonnull
-    DirectoryNode getParentNodeByPath(@Nonnull Path path, boolean createDirectory) throws InvalidPathError {
-        Path parentPath = path.getParent();
+    DirectoryNode getParentNodeByPath(@Nonnull QiniuPath path, boolean createDirectory) throws IOException {
+        final QiniuPath parentPath = path.getParent();
         if (parentPath != null) {
             return this.getDirectoryNodeByPath(parentPath, createDirectory);
         } else {
@@ -136,28 +202,30 @@ final class QiniuFileSystem implements Serializable {
         }
     }
 
-    void createFileNodeByPath(@Nonnull Path path, @Nonnull FileInfo metadata) throws InvalidPathError {
-        final Path childPath = path.getFileName();
-        if (childPath != null) {
+    void createFileNodeByPath(@Nonnull QiniuPath path, final long size, final long putTime,
+            @CheckForNull final String hash, @CheckForNull final String objectName, final long packOffset,
+            final int encoding) throws IOException {
+        final String childName = path.getFileName();
+        if (childName != null) {
             final DirectoryNode parentNode = this.getParentNodeByPath(path, true);
-            parentNode.addChildFileNode(childPath.toString(), metadata);
+            parentNode.addChildFileNode(childName, size, putTime, hash, objectName, packOffset, encoding);
             LOG.log(Level.INFO, "create file node: {0}", path.toString());
         } else {
             throw new InvalidPathError("path must not be empty");
         }
     }
 
-    void deleteFileNodeByPath(@Nonnull Path path) throws InvalidPathError, DeleteDirectoryError {
+    void deleteFileNodeByPath(@Nonnull QiniuPath path) throws IOException {
         LOG.log(Level.INFO, "delete file node: {0}", path.toString());
         DirectoryNode parentNode = this.getParentNodeByPath(path, false);
-        final Path childPath = path.getFileName();
-        if (childPath == null) {
+        final String childName = path.getFileName();
+        if (childName == null) {
             throw new InvalidPathError("path must not be empty");
         }
-        final String childName = childPath.toString();
         final Node subNode = parentNode.getByName(childName);
         if (subNode != null && subNode.isFile()) {
             parentNode.removeChildNode(childName);
+            this.modCount++;
             while (parentNode.isEmpty()) {
                 final String name = parentNode.getNodeName();
                 parentNode = parentNode.getParentNode();
@@ -179,7 +247,42 @@ final class QiniuFileSystem implements Serializable {
             prefix += SEPARATOR;
         }
         QiniuUtils.deletePrefix(bucketManager, this.config.getBucketName(), prefix);
-        this.rootNode.childrenNodes.clear();
+        if (this.contentAddressed) {
+            QiniuContentStore.removeReference(this.config, this.objectNamePrefix);
+        }
+        if (this.packed) {
+            QiniuPack.deleteAll(this.config, this.objectNamePrefix);
+        }
+        if (this.hasManifest) {
+            QiniuManifest.delete(this.config, this.objectNamePrefix);
+        }
+        if (this.contentAddressed) {
+            QiniuContentStore.scheduleGarbageCollection(this.config);
+        }
+        this.rootNode = new DirectoryNode("", this, null, true);
+        this.index = null;
+        this.modCount++;
+    }
+
+    boolean hasManifest() {
+        return this.hasManifest;
+    }
+
+    int getModCount() {
+        return this.modCount;
+    }
+
+    @CheckForNull
+    QiniuIndex getIndex() {
+        return this.index;
+    }
+
+    boolean hasIOException() {
+        return this.ioException != null;
+    }
+
+    long getEstimatedSize() {
+        return this.estimatedSize.get();
     }
 
     void mayThrowIOException() throws IOException {
@@ -223,60 +326,195 @@ final class QiniuFileSystem implements Serializable {
         abstract boolean isDirectory();
 
         @Nonnull
-        Path getPath() {
+        QiniuPath getPath() {
             final Node parentNode = this.getParentNode();
             if (parentNode != null) {
                 return parentNode.getPath().resolve(this.nodeName);
             } else {
-                return FileSystems.getDefault().getPath(this.nodeName);
+                return QiniuPath.ROOT;
             }
         }
     }
 
+    // Children are kept in sorted parallel arrays instead of one map entry and SDK FileInfo per file: directory
+    // names are binary searched, file columns are sorted lazily on the first lookup after appending, and file
+    // nodes are only materialized as short lived views.
     static final class DirectoryNode extends Node {
+        private static final String[] NO_NAMES = new String[0];
+        private static final DirectoryNode[] NO_DIRECTORIES = new DirectoryNode[0];
+
+        @Nonnull
+        private String[] directoryNames = NO_NAMES;
         @Nonnull
-        private final Map<String, Node> childrenNodes;
+        private DirectoryNode[] directories = NO_DIRECTORIES;
+        private int directoryCount;
+        @Nonnull
+        private final FileTable files = new FileTable();
+        private boolean loaded;
 
         DirectoryNode(@Nonnull final String nodeName, @Nonnull final QiniuFileSystem fileSystem,
-                @Nullable final DirectoryNode parentNode) {
+                @Nullable final DirectoryNode parentNode, final boolean loaded) {
             super(nodeName, fileSystem, parentNode);
-            this.childrenNodes = new HashMap<>();
+            this.loaded = loaded;
+        }
+
+        private synchronized void load() throws IOException {
+            if (!this.loaded) {
+                this.fileSystem.listDirectory(this);
+                this.loaded = true;
+            }
         }
 
         @Nonnull
-        DirectoryNode addChildDirectoryNode(@Nonnull final String name) {
-            final DirectoryNode childNode = new DirectoryNode(name, this.fileSystem, this);
-            this.childrenNodes.put(name, childNode);
-            return childNode;
+        synchronized DirectoryNode addChildDirectoryNode(@Nonnull final String name) {
+            return this.addChildDirectoryNode(name, true);
+        }
+
+        synchronized void addUnloadedChildDirectoryNode(@Nonnull final String name) {
+            this.addChildDirectoryNode(name, false);
         }
 
         @Nonnull
-        FileNode addChildFileNode(@Nonnull final String name, @Nonnull final FileInfo metadata) {
-            final FileNode childNode = new FileNode(name, metadata, this.fileSystem, this);
-            this.childrenNodes.put(name, childNode);
+        private synchronized DirectoryNode addChildDirectoryNode(@Nonnull final String name, final boolean loaded) {
+            final int index = Arrays.binarySearch(this.directoryNames, 0, this.directoryCount, name);
+            if (index >= 0) {
+                return this.directories[index];
+            }
+            final int insertion = -index - 1;
+            if (this.directoryCount == this.directories.length) {
+                final int capacity = Math.max(4, this.directoryCount * 2);
+                this.directoryNames = Arrays.copyOf(this.directoryNames, capacity);
+                this.directories = Arrays.copyOf(this.directories, capacity);
+            }
+            System.arraycopy(this.directoryNames, insertion, this.directoryNames, insertion + 1,
+                    this.directoryCount - insertion);
+            System.arraycopy(this.directories, insertion, this.directories, insertion + 1,
+                    this.directoryCount - insertion);
+            final DirectoryNode childNode = new DirectoryNode(name.intern(), this.fileSystem, this, loaded);
+            this.directoryNames[insertion] = childNode.nodeName;
+            this.directories[insertion] = childNode;
+            this.directoryCount++;
+            this.fileSystem.estimatedSize.addAndGet(ESTIMATED_DIRECTORY_SIZE + name.length() * 2);
             return childNode;
         }
 
-        void removeChildNode(@Nonnull final String name) {
-            this.childrenNodes.remove(name);
+        synchronized void addChildFileNode(@Nonnull final String name, final long size, final long putTime,
+                @CheckForNull final String hash, @CheckForNull final String objectName, final long packOffset,
+                final int encoding) {
+            this.files.add(name.intern(), size, putTime, hash, objectName, packOffset, encoding);
+            this.fileSystem.estimatedSize.addAndGet(ESTIMATED_FILE_SIZE + name.length() * 2);
+        }
+
+        synchronized void removeChildNode(@Nonnull final String name) throws IOException {
+            this.load();
+            final int index = Arrays.binarySearch(this.directoryNames, 0, this.directoryCount, name);
+            if (index >= 0) {
+                System.arraycopy(this.directoryNames, index + 1, this.directoryNames, index,
+                        this.directoryCount - index - 1);
+                System.arraycopy(this.directories, index + 1, this.directories, index,
+                        this.directoryCount - index - 1);
+                this.directoryCount--;
+                this.directoryNames[this.directoryCount] = null;
+                this.directories[this.directoryCount] = null;
+            } else {
+                this.files.remove(name);
+            }
         }
 
         @CheckForNull
-        Node getByName(@Nonnull final String name) {
-            return this.childrenNodes.get(name);
+        synchronized DirectoryNode getDirectoryByName(@Nonnull final String name) throws IOException {
+            this.load();
+            final int index = Arrays.binarySearch(this.directoryNames, 0, this.directoryCount, name);
+            if (index >= 0) {
+                return this.directories[index];
+            }
+            return null;
+        }
+
+        @CheckForNull
+        synchronized Node getByName(@Nonnull final String name) throws IOException {
+            final DirectoryNode directoryNode = this.getDirectoryByName(name);
+            if (directoryNode != null) {
+                return directoryNode;
+            }
+            final int index = this.files.indexOf(name);
+            if (index >= 0) {
+                return this.createFileNode(index);
+            }
+            return null;
         }
 
-        boolean isEmpty() {
-            return this.childrenNodes.isEmpty();
+        synchronized boolean isEmpty() throws IOException {
+            return this.getChildrenCount() == 0;
         }
 
         @Nonnull
-        Collection<Node> getChildrenNodes() {
-            return this.childrenNodes.values();
+        synchronized Collection<Node> getChildrenNodes() throws IOException {
+            this.load();
+            final List<Node> childrenNodes = new ArrayList<>(this.directoryCount + this.files.size());
+            for (int i = 0; i < this.directoryCount; i++) {
+                childrenNodes.add(this.directories[i]);
+            }
+            this.files.sort();
+            for (int i = 0; i < this.files.size(); i++) {
+                childrenNodes.add(this.createFileNode(i));
+            }
+            return childrenNodes;
+        }
+
+        synchronized int getChildrenCount() throws IOException {
+            this.load();
+            this.files.sort();
+            return this.directoryCount + this.files.size();
+        }
+
+        synchronized void writeTo(@Nonnull final ObjectOutputStream out) throws IOException {
+            out.writeBoolean(this.loaded);
+            if (!this.loaded) {
+                return;
+            }
+            this.files.writeTo(out);
+            out.writeInt(this.directoryCount);
+            for (int i = 0; i < this.directoryCount; i++) {
+                out.writeUTF(this.directoryNames[i]);
+                this.directories[i].writeTo(out);
+            }
         }
 
-        int getChildrenCount() {
-            return this.childrenNodes.size();
+        synchronized void readFrom(@Nonnull final ObjectInputStream in) throws IOException {
+            this.files.readFrom(in);
+            for (int i = 0; i < this.files.size(); i++) {
+                this.fileSystem.estimatedSize.addAndGet(ESTIMATED_FILE_SIZE + this.files.getName(i).length() * 2);
+            }
+            final int directoryCount = in.readInt();
+            for (int i = 0; i < directoryCount; i++) {
+                final String name = in.readUTF();
+                final boolean loaded = in.readBoolean();
+                final DirectoryNode childNode = this.addChildDirectoryNode(name, loaded);
+                if (loaded) {
+                    childNode.readFrom(in);
+                }
+            }
+        }
+
+        @Nonnull
+        private FileNode createFileNode(final int index) {
+            final String name = this.files.getName(index);
+            String objectName = this.files.getObjectName(index);
+            if (objectName == null) {
+                objectName = this.fileSystem.getListPrefix() + this.getObjectPath() + name;
+            }
+            return new FileNode(name, objectName, this.files.getSize(index), this.files.getPutTime(index),
+                    this.files.getHash(index), this.files.getPackOffset(index), this.files.getEncoding(index),
+                    this.fileSystem, this);
+        }
+
+        @Nonnull
+        String getObjectPath() {
+            if (this.parentNode == null) {
+                return "";
+            }
+            return this.parentNode.getObjectPath() + this.nodeName + SEPARATOR;
         }
 
         @Override
@@ -290,6 +528,231 @@ final class QiniuFileSystem implements Serializable {
         }
     }
 
+    // The etag column lets the disk cache key a file by its content, so it is kept even though a tree could be
+    // browsed without it.
+    static final class FileTable {
+        private String[] names = DirectoryNode.NO_NAMES, hashes = DirectoryNode.NO_NAMES;
+        private long[] sizes = new long[0], putTimes = new long[0];
+        @CheckForNull
+        private long[] packOffsets;
+        @CheckForNull
+        private byte[] encodings;
+        @CheckForNull
+        private String[] objectNames;
+        private int count;
+        private boolean sorted = true;
+
+        void add(@Nonnull final String name, final long size, final long putTime, @CheckForNull final String hash,
+                @CheckForNull final String objectName, final long packOffset, final int encoding) {
+            if (this.count == this.names.length) {
+                this.resize(Math.max(4, this.count * 2));
+            }
+            if (this.count > 0 && this.names[this.count - 1].compareTo(name) >= 0) {
+                this.sorted = false;
+            }
+            this.names[this.count] = name;
+            this.sizes[this.count] = size;
+            this.putTimes[this.count] = putTime;
+            this.hashes[this.count] = hash == null || hash.isEmpty() ? null : hash;
+            if (packOffset >= 0 && this.packOffsets == null) {
+                this.packOffsets = new long[this.names.length];
+                Arrays.fill(this.packOffsets, -1);
+            }
+            if (this.packOffsets != null) {
+                this.packOffsets[this.count] = packOffset;
+            }
+            if (encoding != QiniuManifest.ENCODING_IDENTITY && this.encodings == null) {
+                this.encodings = new byte[this.names.length];
+            }
+            if (this.encodings != null) {
+                this.encodings[this.count] = (byte) encoding;
+            }
+            if (objectName != null && this.objectNames == null) {
+                this.objectNames = new String[this.names.length];
+            }
+            if (this.objectNames != null) {
+                this.objectNames[this.count] = objectName;
+            }
+            this.count++;
+        }
+
+        int size() {
+            return this.count;
+        }
+
+        int indexOf(@Nonnull final String name) {
+            this.sort();
+            final int index = Arrays.binarySearch(this.names, 0, this.count, name);
+            return index >= 0 ? index : -1;
+        }
+
+        @Nonnull
+        String getName(final int index) {
+            return this.names[index];
+        }
+
+        long getSize(final int index) {
+            return this.sizes[index];
+        }
+
+        long getPutTime(final int index) {
+            return this.putTimes[index];
+        }
+
+        @CheckForNull
+        String getHash(final int index) {
+            return this.hashes[index];
+        }
+
+        @CheckForNull
+        String getObjectName(final int index) {
+            return this.objectNames != null ? this.objectNames[index] : null;
+        }
+
+        long getPackOffset(final int index) {
+            return this.packOffsets != null ? this.packOffsets[index] : -1;
+        }
+
+        int getEncoding(final int index) {
+            return this.encodings != null ? this.encodings[index] : QiniuManifest.ENCODING_IDENTITY;
+        }
+
+        void remove(@Nonnull final String name) {
+            final int index = this.indexOf(name);
+            if (index < 0) {
+                return;
+            }
+            final int[] order = new int[this.count - 1];
+            for (int i = 0, j = 0; i < this.count; i++) {
+                if (i != index) {
+                    order[j++] = i;
+                }
+            }
+            this.permute(order, order.length);
+        }
+
+        // Sorts the columns by name; when a name was added twice the last one wins, matching the overwrite semantics
+        // of the map this replaces. Rows appended in order, as a manifest writes them, are left in place.
+        void sort() {
+            if (this.sorted) {
+                return;
+            }
+            final int[] order = new int[this.count];
+            for (int i = 0; i < this.count; i++) {
+                order[i] = i;
+            }
+            this.mergeSort(order, order.clone(), 0, order.length);
+            int unique = 0;
+            for (int i = 0; i < order.length; i++) {
+                if (i + 1 < order.length && this.names[order[i]].equals(this.names[order[i + 1]])) {
+                    continue;
+                }
+                order[unique++] = order[i];
+            }
+            this.permute(order, unique);
+            this.sorted = true;
+        }
+
+        // A stable merge sort of the row indices by name, so equal names stay in the order they were added and no
+        // index is boxed for a comparator.
+        private void mergeSort(@Nonnull final int[] order, @Nonnull final int[] buffer, final int from,
+                final int to) {
+            if (to - from < 2) {
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            this.mergeSort(buffer, order, from, middle);
+            this.mergeSort(buffer, order, middle, to);
+            for (int i = from, j = middle, k = from; k < to; k++) {
+                if (j >= to || i < middle && this.names[buffer[i]].compareTo(this.names[buffer[j]]) <= 0) {
+                    order[k] = buffer[i++];
+                } else {
+                    order[k] = buffer[j++];
+                }
+            }
+        }
+
+        void writeTo(@Nonnull final ObjectOutputStream out) throws IOException {
+            this.sort();
+            out.writeInt(this.count);
+            for (int i = 0; i < this.count; i++) {
+                final String hash = this.getHash(i), objectName = this.getObjectName(i);
+                out.writeUTF(this.names[i]);
+                out.writeLong(this.sizes[i]);
+                out.writeLong(this.putTimes[i]);
+                out.writeUTF(hash != null ? hash : "");
+                out.writeUTF(objectName != null ? objectName : "");
+                out.writeLong(this.getPackOffset(i));
+                out.writeByte(this.getEncoding(i));
+            }
+        }
+
+        void readFrom(@Nonnull final ObjectInputStream in) throws IOException {
+            final int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                final String name = in.readUTF();
+                final long size = in.readLong();
+                final long putTime = in.readLong();
+                final String hash = in.readUTF();
+                final String objectName = in.readUTF();
+                final long packOffset = in.readLong();
+                final int encoding = in.readByte();
+                this.add(name.intern(), size, putTime, hash, objectName.isEmpty() ? null : objectName.intern(),
+                        packOffset, encoding);
+            }
+        }
+
+        private void permute(@Nonnull final int[] order, final int length) {
+            final String[] names = new String[length], hashes = new String[length];
+            final long[] sizes = new long[length], putTimes = new long[length];
+            final long[] packOffsets = this.packOffsets != null ? new long[length] : null;
+            final byte[] encodings = this.encodings != null ? new byte[length] : null;
+            final String[] objectNames = this.objectNames != null ? new String[length] : null;
+            for (int i = 0; i < length; i++) {
+                final int from = order[i];
+                names[i] = this.names[from];
+                hashes[i] = this.hashes[from];
+                sizes[i] = this.sizes[from];
+                putTimes[i] = this.putTimes[from];
+                if (packOffsets != null) {
+                    packOffsets[i] = this.packOffsets[from];
+                }
+                if (encodings != null) {
+                    encodings[i] = this.encodings[from];
+                }
+                if (objectNames != null) {
+                    objectNames[i] = this.objectNames[from];
+                }
+            }
+            this.names = names;
+            this.hashes = hashes;
+            this.sizes = sizes;
+            this.putTimes = putTimes;
+            this.packOffsets = packOffsets;
+            this.encodings = encodings;
+            this.objectNames = objectNames;
+            this.count = length;
+        }
+
+        private void resize(final int capacity) {
+            this.names = Arrays.copyOf(this.names, capacity);
+            this.hashes = Arrays.copyOf(this.hashes, capacity);
+            this.sizes = Arrays.copyOf(this.sizes, capacity);
+            this.putTimes = Arrays.copyOf(this.putTimes, capacity);
+            if (this.packOffsets != null) {
+                final int length = this.packOffsets.length;
+                this.packOffsets = Arrays.copyOf(this.packOffsets, capacity);
+                Arrays.fill(this.packOffsets, length, capacity, -1);
+            }
+            if (this.encodings != null) {
+                this.encodings = Arrays.copyOf(this.encodings, capacity);
+            }
+            if (this.objectNames != null) {
+                this.objectNames = Arrays.copyOf(this.objectNames, capacity);
+            }
+        }
+    }
+
     public static final class InvalidPathError extends FileNotFoundException {
         InvalidPathError(String detail) {
             super(detail);
@@ -303,17 +766,53 @@ final class QiniuFileSystem implements Serializable {
     }
 
     static final class FileNode extends Node {
-        private final FileInfo metadata;
+        @Nonnull
+        private final String objectName;
+        @CheckForNull
+        private final String hash;
+        private final long size, putTime, packOffset;
+        private final int encoding;
 
-        FileNode(@Nonnull final String nodeName, @Nonnull final FileInfo metadata,
+        FileNode(@Nonnull final String nodeName, @Nonnull final String objectName, final long size,
+                final long putTime, @CheckForNull final String hash, final long packOffset, final int encoding,
                 @Nonnull final QiniuFileSystem fileSystem, @Nonnull final DirectoryNode parentNode) {
             super(nodeName, fileSystem, parentNode);
-            this.metadata = metadata;
+            this.objectName = objectName;
+            this.size = size;
+            this.putTime = putTime;
+            this.hash = hash;
+            this.packOffset = packOffset;
+            this.encoding = encoding;
         }
 
         @Nonnull
-        public FileInfo getMetadata() {
-            return this.metadata;
+        String getObjectName() {
+            return this.objectName;
+        }
+
+        long getSize() {
+            return this.size;
+        }
+
+        long getPutTime() {
+            return this.putTime;
+        }
+
+        @CheckForNull
+        String getHash() {
+            return this.hash;
+        }
+
+        boolean isPacked() {
+            return this.packOffset >= 0;
+        }
+
+        long getPackOffset() {
+            return this.packOffset;
+        }
+
+        boolean isCompressed() {
+            return this.encoding != QiniuManifest.ENCODING_IDENTITY;
         }
 
         @Override
@@ -342,6 +841,9 @@ final class QiniuFileSystem implements Serializable {
         return this.rootNode;
     }
 
+    // The tree built so far is sent along, so the receiving side neither downloads the manifest again nor lists
+    // the bucket; directories which were never listed stay unloaded and are listed there on first access. Trees
+    // backed by a memory-mapped index or which failed to load are rebuilt by the receiver as before.
     private void writeObject(ObjectOutputStream out) throws IOException {
         out.writeObject(this.config);
         out.writeUTF(this.objectNamePrefix);
@@ -351,45 +853,46 @@ final class QiniuFileSystem implements Serializable {
         } else {
             out.writeBoolean(false);
         }
+        final boolean withTree = this.ioException == null && this.index == null;
+        out.writeBoolean(withTree);
+        if (withTree) {
+            out.writeBoolean(this.hasManifest);
+            out.writeBoolean(this.contentAddressed);
+            out.writeBoolean(this.packed);
+            this.rootNode.writeTo(out);
+        }
     }
 
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         this.config = (QiniuConfig) in.readObject();
         this.objectNamePrefix = in.readUTF();
+        this.estimatedSize = new AtomicLong();
         if (in.readBoolean()) {
             this.ioException = new IOException((String) in.readObject());
         } else {
             this.ioException = null;
         }
-        this.rootNode = new DirectoryNode("", this, null);
-        initNodes();
-    }
-
-    @Nonnull
-    static Path fromObjectNameToFileSystemPath(final String objectName) throws InvalidPathError {
-        final String[] segments = objectName.split(Pattern.quote(SEPARATOR));
-        switch (segments.length) {
-            case 0:
-                throw new InvalidPathError("Path is empty");
-            case 1:
-                return FileSystems.getDefault().getPath(segments[0]);
-            default:
-                return FileSystems.getDefault().getPath(segments[0], Arrays.copyOfRange(segments, 1, segments.length));
-        }
-    }
-
-    static String fromFileSystemPathToObjectName(final Path filePath) {
-        if (filePath == null) {
-            return null;
+        if (in.readBoolean()) {
+            this.hasManifest = in.readBoolean();
+            this.contentAddressed = in.readBoolean();
+            this.packed = in.readBoolean();
+            final boolean loaded = in.readBoolean();
+            this.rootNode = new DirectoryNode("", this, null, loaded);
+            if (loaded) {
+                this.rootNode.readFrom(in);
+            }
+            LOG.log(Level.INFO, "QiniuFileSystem::{0}::readObject() done", this.objectNamePrefix);
+            return;
         }
-        return fromFileSystemPathToObjectName(filePath.normalize().toString());
+        this.rootNode = new DirectoryNode("", this, null, true);
+        initNodes();
     }
 
     static String fromFileSystemPathToObjectName(final String filePath) {
         if (filePath == null) {
             return null;
         }
-        final String[] segments = filePath.split(Pattern.quote(File.separator));
+        final String[] segments = FILE_SEPARATOR_PATTERN.split(filePath);
         if (segments.length > 0) {
             final StringJoiner joiner = new StringJoiner("/");
             for (final String segment : segments) {
@@ -0,0 +1,124 @@
+package io.jenkins.plugins;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+@Restricted(NoExternalUse.class)
+final class QiniuFileSystemCache {
+    private static final Logger LOG = Logger.getLogger(QiniuFileSystemCache.class.getName());
+    private static final int MAX_ENTRIES = 200;
+    private static final long MAX_ESTIMATED_SIZE = 64 * 1024 * 1024;
+    private static final long TIME_TO_LIVE = TimeUnit.MINUTES.toNanos(30);
+    private static final ConcurrentMap<String, Entry> CACHE = new ConcurrentHashMap<>();
+
+    private QiniuFileSystemCache() {
+    }
+
+    @Nonnull
+    static QiniuFileSystem get(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix) {
+        final String key = getKey(config, objectNamePrefix);
+        Entry entry = CACHE.get(key);
+        if (entry != null && entry.isExpired()) {
+            CACHE.remove(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            final Entry newEntry = new Entry();
+            entry = CACHE.putIfAbsent(key, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+                load(key, newEntry, config, objectNamePrefix);
+            }
+        }
+        entry.lastAccessTime = System.nanoTime();
+        try {
+            return entry.future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    static void invalidate(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix) {
+        if (CACHE.remove(getKey(config, objectNamePrefix)) != null) {
+            LOG.log(Level.INFO, "QiniuFileSystemCache::invalidate(): prefix={0}", objectNamePrefix);
+        }
+    }
+
+    private static void load(@Nonnull final String key, @Nonnull final Entry entry, @Nonnull final QiniuConfig config,
+            @Nonnull final String objectNamePrefix) {
+        try {
+            final QiniuFileSystem fileSystem = QiniuFileSystem.create(config, objectNamePrefix);
+            entry.future.complete(fileSystem);
+            if (fileSystem.hasIOException()) {
+                CACHE.remove(key, entry);
+                return;
+            }
+        } catch (RuntimeException e) {
+            entry.future.completeExceptionally(e);
+            CACHE.remove(key, entry);
+            return;
+        }
+        evict();
+    }
+
+    // Lazily listed trees keep growing after they are cached, so the size bound is checked against the current
+    // estimates each time a new tree is added.
+    private static void evict() {
+        final List<Map.Entry<String, Entry>> entries = new ArrayList<>();
+        long estimatedSize = 0;
+        for (Map.Entry<String, Entry> entry : CACHE.entrySet()) {
+            final QiniuFileSystem fileSystem = entry.getValue().future.getNow(null);
+            if (fileSystem != null) {
+                entries.add(entry);
+                estimatedSize += fileSystem.getEstimatedSize();
+            }
+        }
+        if (entries.size() <= MAX_ENTRIES && estimatedSize <= MAX_ESTIMATED_SIZE) {
+            return;
+        }
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccessTime));
+        int count = entries.size();
+        for (Map.Entry<String, Entry> entry : entries) {
+            if (count <= MAX_ENTRIES && estimatedSize <= MAX_ESTIMATED_SIZE) {
+                break;
+            }
+            if (CACHE.remove(entry.getKey(), entry.getValue())) {
+                count--;
+                estimatedSize -= entry.getValue().future.getNow(null).getEstimatedSize();
+                LOG.log(Level.INFO, "QiniuFileSystemCache::evict(): {0}", entry.getKey());
+            }
+        }
+    }
+
+    @Nonnull
+    private static String getKey(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix) {
+        return config.getFingerprint() + QiniuFileSystem.SEPARATOR + objectNamePrefix;
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<QiniuFileSystem> future = new CompletableFuture<>();
+        private final long createTime = System.nanoTime();
+        private volatile long lastAccessTime = this.createTime;
+
+        boolean isExpired() {
+            return System.nanoTime() - this.createTime > TIME_TO_LIVE;
+        }
+    }
+}
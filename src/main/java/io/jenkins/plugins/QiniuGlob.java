@@ -0,0 +1,132 @@
+package io.jenkins.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+// Ant style include and exclude patterns, split into segments once and matched against segment arrays of
+// object names, so that a whole tree can be filtered without building a path string per node.
+@Restricted(NoExternalUse.class)
+final class QiniuGlob {
+    private static final String ANY_DIRECTORIES = "**";
+
+    @Nonnull
+    private final List<String[]> includes, excludes;
+
+    QiniuGlob(@Nonnull final String includes, @Nonnull final String excludes, final boolean useDefaultExcludes) {
+        this.includes = parsePatterns(includes);
+        this.excludes = parsePatterns(excludes);
+        if (useDefaultExcludes) {
+            for (String pattern : DirectoryScanner.getDefaultExcludes()) {
+                this.excludes.add(tokenize(pattern));
+            }
+        }
+        if (this.includes.isEmpty()) {
+            this.includes.add(new String[] { ANY_DIRECTORIES });
+        }
+    }
+
+    boolean matches(@Nonnull final String path) {
+        final String[] segments = StringUtils.split(path, QiniuFileSystem.SEPARATOR_CHAR);
+        return this.matches(segments, segments.length);
+    }
+
+    boolean matches(@Nonnull final String[] path, final int length) {
+        return matchesAny(this.includes, path, length) && !matchesAny(this.excludes, path, length);
+    }
+
+    // Whether anything below the directory could still be included, used to skip whole subtrees.
+    boolean mayMatchBelow(@Nonnull final String[] path, final int length) {
+        for (String[] pattern : this.includes) {
+            if (matchStart(pattern, path, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesAny(@Nonnull final List<String[]> patterns, @Nonnull final String[] path,
+            final int length) {
+        for (String[] pattern : patterns) {
+            if (matchPath(pattern, 0, path, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchPath(@Nonnull final String[] pattern, int patternIndex, @Nonnull final String[] path,
+            int pathIndex, final int length) {
+        while (patternIndex < pattern.length && pathIndex < length) {
+            if (pattern[patternIndex].equals(ANY_DIRECTORIES)) {
+                while (patternIndex + 1 < pattern.length && pattern[patternIndex + 1].equals(ANY_DIRECTORIES)) {
+                    patternIndex++;
+                }
+                if (patternIndex == pattern.length - 1) {
+                    return true;
+                }
+                for (int i = pathIndex; i < length; i++) {
+                    if (matchPath(pattern, patternIndex + 1, path, i, length)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (!SelectorUtils.match(pattern[patternIndex], path[pathIndex], true)) {
+                return false;
+            }
+            patternIndex++;
+            pathIndex++;
+        }
+        if (pathIndex < length) {
+            return false;
+        }
+        for (; patternIndex < pattern.length; patternIndex++) {
+            if (!pattern[patternIndex].equals(ANY_DIRECTORIES)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchStart(@Nonnull final String[] pattern, @Nonnull final String[] path,
+            final int length) {
+        int patternIndex = 0;
+        for (int pathIndex = 0; pathIndex < length; pathIndex++, patternIndex++) {
+            if (patternIndex == pattern.length) {
+                return false;
+            } else if (pattern[patternIndex].equals(ANY_DIRECTORIES)) {
+                return true;
+            } else if (!SelectorUtils.match(pattern[patternIndex], path[pathIndex], true)) {
+                return false;
+            }
+        }
+        return patternIndex < pattern.length;
+    }
+
+    // Separated by commas or spaces, as Ant's PatternSet does
+    @Nonnull
+    private static List<String[]> parsePatterns(@Nonnull final String patterns) {
+        final List<String[]> result = new ArrayList<>();
+        for (String pattern : StringUtils.split(patterns, ", ")) {
+            result.add(tokenize(pattern));
+        }
+        return result;
+    }
+
+    @Nonnull
+    private static String[] tokenize(@Nonnull final String pattern) {
+        String normalized = pattern.replace('\\', QiniuFileSystem.SEPARATOR_CHAR);
+        if (normalized.endsWith(QiniuFileSystem.SEPARATOR)) {
+            normalized += ANY_DIRECTORIES;
+        }
+        return StringUtils.split(normalized, QiniuFileSystem.SEPARATOR_CHAR);
+    }
+}
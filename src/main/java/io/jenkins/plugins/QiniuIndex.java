@@ -0,0 +1,518 @@
+package io.jenkins.plugins;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import com.qiniu.storage.model.FileInfo;
+
+import hudson.Functions;
+
+// A read-only index of one build, kept in a memory-mapped file under the build directory. The file holds a header,
+// fixed size records sorted by the UTF-8 bytes of their paths, and a string area, so lookups binary search the
+// mapping directly and a directory is the contiguous range of records sharing its path as prefix.
+@Restricted(NoExternalUse.class)
+final class QiniuIndex {
+    private static final Logger LOG = Logger.getLogger(QiniuIndex.class.getName());
+    static final String FILE_NAME = "qiniu-artifact-index";
+    private static final int MAGIC = 0x514e4958;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 40;
+    private static final int PATH = 0, HASH = 4, OBJECT_NAME = 8, ENCODING = 12, SIZE = 16, PUT_TIME = 24, OFFSET = 32;
+    private static final int MAX_CACHED_INDEXES = 64;
+    private static final ConcurrentMap<String, CompletableFuture<QiniuIndex>> CACHE = new ConcurrentHashMap<>();
+
+    @Nonnull
+    private final String listPrefix;
+    @Nonnull
+    private final ByteBuffer buffer;
+    private final int flags, count, stringsOffset;
+
+    private QiniuIndex(@Nonnull final String listPrefix, @Nonnull final ByteBuffer buffer) throws IOException {
+        this.listPrefix = listPrefix;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Invalid qiniu artifact index");
+        }
+        final int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported qiniu artifact index version " + version);
+        }
+        this.flags = buffer.getInt(8);
+        this.count = buffer.getInt(12);
+        this.stringsOffset = buffer.getInt(16);
+        if (this.stringsOffset != HEADER_SIZE + (long) this.count * RECORD_SIZE
+                || this.stringsOffset > buffer.capacity()) {
+            throw new IOException("Qiniu artifact index is truncated");
+        }
+    }
+
+    @CheckForNull
+    static QiniuIndex get(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix,
+            @Nonnull final File file, @Nonnull final BooleanSupplier listIfNoManifest) throws IOException {
+        final String key = file.getAbsolutePath();
+        CompletableFuture<QiniuIndex> future = CACHE.get(key);
+        if (future == null) {
+            if (CACHE.size() >= MAX_CACHED_INDEXES) {
+                CACHE.clear();
+            }
+            final CompletableFuture<QiniuIndex> newFuture = new CompletableFuture<>();
+            future = CACHE.putIfAbsent(key, newFuture);
+            if (future == null) {
+                future = newFuture;
+                try {
+                    // A build without Qiniu artifacts stays cached as null until it is invalidated
+                    newFuture.complete(open(config, objectNamePrefix, file, listIfNoManifest));
+                } catch (IOException | RuntimeException e) {
+                    newFuture.completeExceptionally(e);
+                    CACHE.remove(key, newFuture);
+                }
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    static void invalidate(@Nonnull final File file) {
+        CACHE.remove(file.getAbsolutePath());
+        if (file.exists() && !file.delete()) {
+            LOG.log(Level.WARNING, "QiniuIndex::invalidate(): failed to delete {0}", file);
+        }
+    }
+
+    @CheckForNull
+    private static QiniuIndex open(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix,
+            @Nonnull final File file, @Nonnull final BooleanSupplier listIfNoManifest) throws IOException {
+        final String listPrefix = getListPrefix(objectNamePrefix);
+        if (file.exists()) {
+            try {
+                return new QiniuIndex(listPrefix, map(file));
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "QiniuIndex::open(): rebuild {0}: {1}", new Object[] { file, e });
+            }
+        }
+        if (!build(config, objectNamePrefix, listPrefix, file, listIfNoManifest)) {
+            return null;
+        }
+        return new QiniuIndex(listPrefix, map(file));
+    }
+
+    // Windows cannot delete or replace a file while it is mapped, and a mapping is only released by the garbage
+    // collector, so the index is read into the heap there instead.
+    @Nonnull
+    private static ByteBuffer map(@Nonnull final File file) throws IOException {
+        if (Functions.isWindows()) {
+            return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            final FileChannel channel = randomAccessFile.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // Entries are streamed once from the manifest, or from the listing when there is none, into a record file and
+    // a string file next to the index; only the record order is sorted afterwards before both are joined.
+    private static boolean build(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix,
+            @Nonnull final String listPrefix, @Nonnull final File file, @Nonnull final BooleanSupplier listIfNoManifest)
+            throws IOException {
+        final File directory = file.getAbsoluteFile().getParentFile();
+        final File recordsFile = File.createTempFile(FILE_NAME, ".records", directory);
+        final File stringsFile = File.createTempFile(FILE_NAME, ".strings", directory);
+        final File indexFile = File.createTempFile(FILE_NAME, ".tmp", directory);
+        final long startTime = System.nanoTime();
+        try {
+            final int flags;
+            final int count;
+            try (Writer writer = new Writer(recordsFile, stringsFile, listPrefix)) {
+                final int manifestFlags = QiniuManifest.load(config, objectNamePrefix,
+                        (QiniuManifest.Entry entry) -> writer.add(entry.path, entry.objectName, entry.hash, entry.size,
+                                entry.putTime, entry.offset, entry.encoding));
+                if (manifestFlags == QiniuManifest.NOT_FOUND) {
+                    if (!listIfNoManifest.getAsBoolean()) {
+                        return false;
+                    }
+                    QiniuUtils.listPrefix(config.getBucketManager(), config.getBucketName(), listPrefix,
+                            (FileInfo metadata) -> writer.add(metadata.key.substring(listPrefix.length()),
+                                    metadata.key, metadata.hash, metadata.fsize, metadata.putTime, -1,
+                                    QiniuManifest.ENCODING_IDENTITY));
+                }
+                flags = manifestFlags;
+                count = writer.count;
+            }
+            if (HEADER_SIZE + (long) count * RECORD_SIZE + stringsFile.length() > Integer.MAX_VALUE) {
+                throw new IOException("Qiniu artifact index of " + count + " entries is too large");
+            }
+            final ByteBuffer records = map(recordsFile);
+            final ByteBuffer strings = map(stringsFile);
+            final int[] order = sort(records, strings, count);
+            try (FileOutputStream out = new FileOutputStream(indexFile)) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(flags).putInt(order.length)
+                        .putInt(HEADER_SIZE + order.length * RECORD_SIZE).flip();
+                final FileChannel channel = out.getChannel();
+                writeFully(channel, header);
+                final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE * 1024);
+                for (int i = 0; i < order.length; i++) {
+                    final ByteBuffer source = records.duplicate();
+                    source.position(order[i] * RECORD_SIZE).limit(order[i] * RECORD_SIZE + RECORD_SIZE);
+                    record.put(source);
+                    if (!record.hasRemaining() || i == order.length - 1) {
+                        record.flip();
+                        writeFully(channel, record);
+                        record.clear();
+                    }
+                }
+                final ByteBuffer source = strings.duplicate();
+                source.position(0);
+                writeFully(channel, source);
+            }
+            Files.move(indexFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            LOG.log(Level.INFO, "QiniuIndex::build(): {0} entries of {1} indexed in {2} ms",
+                    new Object[] { order.length, objectNamePrefix, (System.nanoTime() - startTime) / 1000000 });
+            return true;
+        } finally {
+            Files.deleteIfExists(recordsFile.toPath());
+            Files.deleteIfExists(stringsFile.toPath());
+            Files.deleteIfExists(indexFile.toPath());
+        }
+    }
+
+    private static void writeFully(@Nonnull final FileChannel channel, @Nonnull final ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Bottom-up merge sort of record numbers, stable so that the last of several entries with the same path wins
+    // when duplicates are dropped, as it does when the manifest is loaded into a tree.
+    @Nonnull
+    private static int[] sort(@Nonnull final ByteBuffer records, @Nonnull final ByteBuffer strings, final int count) {
+        int[] order = new int[count];
+        int[] merged = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int width = 1; width < count; width *= 2) {
+            for (int low = 0; low < count; low += width * 2) {
+                final int middle = Math.min(low + width, count);
+                final int high = Math.min(low + width * 2, count);
+                int left = low, right = middle, target = low;
+                while (left < middle && right < high) {
+                    if (compare(strings, records.getInt(order[right] * RECORD_SIZE + PATH), strings,
+                            records.getInt(order[left] * RECORD_SIZE + PATH)) < 0) {
+                        merged[target++] = order[right++];
+                    } else {
+                        merged[target++] = order[left++];
+                    }
+                }
+                while (left < middle) {
+                    merged[target++] = order[left++];
+                }
+                while (right < high) {
+                    merged[target++] = order[right++];
+                }
+            }
+            final int[] swap = order;
+            order = merged;
+            merged = swap;
+        }
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (i + 1 < count && compare(strings, records.getInt(order[i] * RECORD_SIZE + PATH), strings,
+                    records.getInt(order[i + 1] * RECORD_SIZE + PATH)) == 0) {
+                continue;
+            }
+            order[unique++] = order[i];
+        }
+        if (unique == count) {
+            return order;
+        }
+        final int[] result = new int[unique];
+        System.arraycopy(order, 0, result, 0, unique);
+        return result;
+    }
+
+    private static int compare(@Nonnull final ByteBuffer a, final int aOffset, @Nonnull final ByteBuffer b,
+            final int bOffset) {
+        final int aLength = a.getInt(aOffset), bLength = b.getInt(bOffset);
+        final int length = Math.min(aLength, bLength);
+        for (int i = 0; i < length; i++) {
+            final int result = (a.get(aOffset + 4 + i) & 0xff) - (b.get(bOffset + 4 + i) & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    @Nonnull
+    private static String getListPrefix(@Nonnull final String objectNamePrefix) {
+        if (!objectNamePrefix.isEmpty() && !objectNamePrefix.endsWith(QiniuFileSystem.SEPARATOR)) {
+            return objectNamePrefix + QiniuFileSystem.SEPARATOR;
+        }
+        return objectNamePrefix;
+    }
+
+    boolean hasManifest() {
+        return this.flags != QiniuManifest.NOT_FOUND;
+    }
+
+    boolean isContentAddressed() {
+        return this.hasManifest() && (this.flags & QiniuManifest.FLAG_CONTENT_ADDRESSED) != 0;
+    }
+
+    boolean isPacked() {
+        return this.hasManifest() && (this.flags & QiniuManifest.FLAG_PACKED) != 0;
+    }
+
+    int getCount() {
+        return this.count;
+    }
+
+    int find(@Nonnull final String path) {
+        final byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        final int index = this.lowerBound(key, key.length);
+        if (index < this.count && this.comparePath(index, key, key.length) == 0) {
+            return index;
+        }
+        return -1;
+    }
+
+    boolean isDirectory(@Nonnull final String path) {
+        if (path.isEmpty()) {
+            return true;
+        }
+        final byte[] key = (path + QiniuFileSystem.SEPARATOR).getBytes(StandardCharsets.UTF_8);
+        final int index = this.lowerBound(key, key.length);
+        return index < this.count && this.startsWith(index, key, key.length);
+    }
+
+    // Walks the records below a directory, jumping over each subdirectory with one binary search, and returns
+    // the number of immediate children; their names are added to the list when one is given.
+    int list(@Nonnull final String path, @CheckForNull final List<String> names) {
+        final byte[] prefix = path.isEmpty() ? new byte[0]
+                : (path + QiniuFileSystem.SEPARATOR).getBytes(StandardCharsets.UTF_8);
+        int children = 0;
+        int index = this.lowerBound(prefix, prefix.length);
+        while (index < this.count && this.startsWith(index, prefix, prefix.length)) {
+            final int offset = this.getPathOffset(index);
+            final int length = this.buffer.getInt(offset);
+            int separator = -1;
+            for (int i = prefix.length; i < length; i++) {
+                if (this.buffer.get(offset + 4 + i) == QiniuFileSystem.SEPARATOR_CHAR) {
+                    separator = i;
+                    break;
+                }
+            }
+            final int end = separator >= 0 ? separator : length;
+            if (names != null) {
+                names.add(this.readString(offset, prefix.length, end - prefix.length));
+            }
+            children++;
+            if (separator < 0) {
+                index++;
+            } else {
+                final byte[] next = new byte[separator + 1];
+                for (int i = 0; i <= separator; i++) {
+                    next[i] = this.buffer.get(offset + 4 + i);
+                }
+                next[separator]++;
+                index = this.lowerBound(next, next.length);
+            }
+        }
+        return children;
+    }
+
+    void forEachFile(@Nonnull final String path, @Nonnull final Consumer<String> consumer) {
+        final byte[] prefix = path.isEmpty() ? new byte[0]
+                : (path + QiniuFileSystem.SEPARATOR).getBytes(StandardCharsets.UTF_8);
+        for (int index = this.lowerBound(prefix, prefix.length);
+                index < this.count && this.startsWith(index, prefix, prefix.length); index++) {
+            final int offset = this.getPathOffset(index);
+            consumer.accept(this.readString(offset, prefix.length, this.buffer.getInt(offset) - prefix.length));
+        }
+    }
+
+    long getSize(final int index) {
+        return this.buffer.getLong(this.getRecordOffset(index) + SIZE);
+    }
+
+    long getPutTime(final int index) {
+        return this.buffer.getLong(this.getRecordOffset(index) + PUT_TIME);
+    }
+
+    @Nonnull
+    String getHash(final int index) {
+        return this.readString(this.stringsOffset + this.buffer.getInt(this.getRecordOffset(index) + HASH));
+    }
+
+    @Nonnull
+    String getObjectName(final int index) {
+        final int objectName = this.buffer.getInt(this.getRecordOffset(index) + OBJECT_NAME);
+        if (objectName < 0) {
+            return this.listPrefix + this.readString(this.getPathOffset(index));
+        }
+        return this.readString(this.stringsOffset + objectName);
+    }
+
+    long getPackOffset(final int index) {
+        return this.buffer.getLong(this.getRecordOffset(index) + OFFSET);
+    }
+
+    boolean isPacked(final int index) {
+        return this.getPackOffset(index) >= 0;
+    }
+
+    boolean isCompressed(final int index) {
+        return this.buffer.getInt(this.getRecordOffset(index) + ENCODING) != QiniuManifest.ENCODING_IDENTITY;
+    }
+
+    private int lowerBound(@Nonnull final byte[] key, final int keyLength) {
+        int low = 0, high = this.count;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (this.comparePath(middle, key, keyLength) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int comparePath(final int index, @Nonnull final byte[] key, final int keyLength) {
+        final int offset = this.getPathOffset(index);
+        final int length = this.buffer.getInt(offset);
+        final int common = Math.min(length, keyLength);
+        for (int i = 0; i < common; i++) {
+            final int result = (this.buffer.get(offset + 4 + i) & 0xff) - (key[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return length - keyLength;
+    }
+
+    private boolean startsWith(final int index, @Nonnull final byte[] prefix, final int prefixLength) {
+        final int offset = this.getPathOffset(index);
+        if (this.buffer.getInt(offset) < prefixLength) {
+            return false;
+        }
+        for (int i = 0; i < prefixLength; i++) {
+            if (this.buffer.get(offset + 4 + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int getRecordOffset(final int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private int getPathOffset(final int index) {
+        return this.stringsOffset + this.buffer.getInt(this.getRecordOffset(index) + PATH);
+    }
+
+    @Nonnull
+    private String readString(final int offset) {
+        return this.readString(offset, 0, this.buffer.getInt(offset));
+    }
+
+    @Nonnull
+    private String readString(final int offset, final int start, final int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = this.buffer.get(offset + 4 + start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Writer implements AutoCloseable {
+        @Nonnull
+        private final DataOutputStream records, strings;
+        @Nonnull
+        private final String listPrefix;
+        private int count, stringsSize;
+
+        Writer(@Nonnull final File recordsFile, @Nonnull final File stringsFile, @Nonnull final String listPrefix)
+                throws IOException {
+            this.records = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(recordsFile)));
+            this.strings = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(stringsFile)));
+            this.listPrefix = listPrefix;
+        }
+
+        void add(@Nonnull final String path, @Nonnull final String objectName, @CheckForNull final String hash,
+                final long size, final long putTime, final long offset, final int encoding) throws IOException {
+            if (path.isEmpty()) {
+                return;
+            }
+            if ((long) HEADER_SIZE + (this.count + 1L) * RECORD_SIZE > Integer.MAX_VALUE) {
+                throw new IOException("Qiniu artifact index has too many entries");
+            }
+            this.records.writeInt(this.writeString(path));
+            this.records.writeInt(this.writeString(hash == null ? "" : hash));
+            this.records.writeInt(objectName.equals(this.listPrefix + path) ? -1 : this.writeString(objectName));
+            this.records.writeInt(encoding);
+            this.records.writeLong(size);
+            this.records.writeLong(putTime);
+            this.records.writeLong(offset);
+            this.count++;
+        }
+
+        private int writeString(@Nonnull final String value) throws IOException {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if ((long) this.stringsSize + 4 + bytes.length > Integer.MAX_VALUE) {
+                throw new IOException("Qiniu artifact index is too large");
+            }
+            final int offset = this.stringsSize;
+            this.strings.writeInt(bytes.length);
+            this.strings.write(bytes);
+            this.stringsSize += 4 + bytes.length;
+            return offset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.records.close();
+            } finally {
+                this.strings.close();
+            }
+        }
+    }
+}
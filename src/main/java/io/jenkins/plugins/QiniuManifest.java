@@ -0,0 +1,214 @@
+package io.jenkins.plugins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import com.qiniu.common.QiniuException;
+import com.qiniu.storage.UploadManager;
+import com.qiniu.util.StringMap;
+
+@Restricted(NoExternalUse.class)
+final class QiniuManifest {
+    private static final Logger LOG = Logger.getLogger(QiniuManifest.class.getName());
+    private static final String SUFFIX = ".qiniu-artifact-manifest";
+    private static final int MAGIC = 0x514e4d46;
+    private static final int VERSION = 1;
+    static final int FLAG_CONTENT_ADDRESSED = 1;
+    static final int FLAG_PACKED = 2;
+    static final int FLAG_COMPRESSED = 4;
+    static final int ENCODING_IDENTITY = 0;
+    static final int ENCODING_GZIP = 1;
+    static final int NOT_FOUND = -1;
+
+    private QiniuManifest() {
+    }
+
+    @Nonnull
+    static String getObjectName(@Nonnull final String objectNamePrefix) {
+        String name = objectNamePrefix;
+        while (name.endsWith(QiniuFileSystem.SEPARATOR)) {
+            name = name.substring(0, name.length() - 1);
+        }
+        return name + SUFFIX;
+    }
+
+    static final class Entry {
+        @Nonnull
+        final String path;
+        @Nonnull
+        final String objectName;
+        @Nonnull
+        final String hash;
+        final long size, putTime, offset;
+        final int encoding;
+
+        Entry(@Nonnull final String path, @Nonnull final String objectName, final long size,
+                @Nonnull final String hash, final long putTime) {
+            this(path, objectName, size, hash, putTime, -1);
+        }
+
+        Entry(@Nonnull final String path, @Nonnull final String objectName, final long size,
+                @Nonnull final String hash, final long putTime, final long offset) {
+            this(path, objectName, size, hash, putTime, offset, ENCODING_IDENTITY);
+        }
+
+        Entry(@Nonnull final String path, @Nonnull final String objectName, final long size,
+                @Nonnull final String hash, final long putTime, final long offset, final int encoding) {
+            this.path = path;
+            this.objectName = objectName;
+            this.size = size;
+            this.hash = hash;
+            this.putTime = putTime;
+            this.offset = offset;
+            this.encoding = encoding;
+        }
+
+        boolean isPacked() {
+            return this.offset >= 0;
+        }
+
+        boolean isCompressed() {
+            return this.encoding != ENCODING_IDENTITY;
+        }
+    }
+
+    @FunctionalInterface
+    static interface EntryConsumer {
+        void accept(@Nonnull Entry entry) throws IOException;
+    }
+
+    static final class Writer implements AutoCloseable {
+        @Nonnull
+        private final String objectNamePrefix;
+        @Nonnull
+        private final DataOutputStream out;
+        private final int flags;
+
+        Writer(@Nonnull final OutputStream out, @Nonnull final String objectNamePrefix, final int flags)
+                throws IOException {
+            this.objectNamePrefix = objectNamePrefix;
+            this.flags = flags;
+            this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)));
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+            this.out.writeInt(flags);
+        }
+
+        void write(@Nonnull final Entry entry) throws IOException {
+            this.out.writeBoolean(true);
+            this.out.writeUTF(entry.path);
+            if (entry.objectName.equals(this.objectNamePrefix + entry.path)) {
+                this.out.writeUTF("");
+            } else {
+                this.out.writeUTF(entry.objectName);
+            }
+            this.out.writeLong(entry.size);
+            this.out.writeUTF(entry.hash);
+            this.out.writeLong(entry.putTime);
+            if ((this.flags & FLAG_PACKED) != 0) {
+                this.out.writeLong(entry.offset);
+            }
+            if ((this.flags & FLAG_COMPRESSED) != 0) {
+                this.out.writeByte(entry.encoding);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.writeBoolean(false);
+            this.out.close();
+        }
+    }
+
+    static int read(@Nonnull final InputStream in, @Nonnull final String objectNamePrefix,
+            @Nonnull final EntryConsumer consumer) throws IOException {
+        try (DataInputStream dataIn = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)))) {
+            if (dataIn.readInt() != MAGIC) {
+                throw new IOException("Invalid qiniu artifact manifest");
+            }
+            final int version = dataIn.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported qiniu artifact manifest version " + version);
+            }
+            final int flags = dataIn.readInt();
+            while (dataIn.readBoolean()) {
+                final String path = dataIn.readUTF();
+                String objectName = dataIn.readUTF();
+                if (objectName.isEmpty()) {
+                    objectName = objectNamePrefix + path;
+                }
+                final long size = dataIn.readLong();
+                final String hash = dataIn.readUTF();
+                final long putTime = dataIn.readLong();
+                long offset = -1;
+                if ((flags & FLAG_PACKED) != 0) {
+                    offset = dataIn.readLong();
+                }
+                int encoding = ENCODING_IDENTITY;
+                if ((flags & FLAG_COMPRESSED) != 0) {
+                    encoding = dataIn.readByte();
+                }
+                consumer.accept(new Entry(path, objectName, size, hash, putTime, offset, encoding));
+            }
+            return flags;
+        } catch (EOFException e) {
+            throw new IOException("Qiniu artifact manifest is truncated", e);
+        }
+    }
+
+    static int load(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix,
+            @Nonnull final EntryConsumer consumer) throws IOException {
+        final String objectName = getObjectName(objectNamePrefix);
+        final InputStream in;
+        try {
+            in = QiniuUtils.openSourceObject(config, objectName);
+        } catch (FileNotFoundException e) {
+            LOG.log(Level.INFO, "QiniuManifest::load(): {0} is not found", objectName);
+            return NOT_FOUND;
+        }
+        return read(in, objectNamePrefix, consumer);
+    }
+
+    static void upload(@Nonnull final QiniuConfig config, @Nonnull final UploadManager uploadManager,
+            @Nonnull final File manifestFile, @Nonnull final String objectNamePrefix) throws IOException {
+        final String objectName = getObjectName(objectNamePrefix);
+        final String uploadToken = config.getAuth().uploadToken(config.getBucketName(), objectName, 24 * 3600,
+                new StringMap().put("fileType", config.getFileType()));
+        uploadManager.put(manifestFile, objectName, uploadToken, null, null, true);
+        LOG.log(Level.INFO, "QiniuManifest::upload(): {0}", objectName);
+    }
+
+    static void delete(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix)
+            throws IOException {
+        try {
+            config.getBucketManager().delete(config.getBucketName(), getObjectName(objectNamePrefix));
+        } catch (QiniuException e) {
+            if (e.code() != 612) {
+                throw e;
+            }
+        }
+    }
+
+    @Nonnull
+    static File createTempFile() throws IOException {
+        return Files.createTempFile("qiniu-artifact-manifest", ".bin").toFile();
+    }
+}
@@ -0,0 +1,55 @@
+package io.jenkins.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+// Where the content of one artifact is stored and how it is encoded, resolved from the tree or the index.
+@Restricted(NoExternalUse.class)
+final class QiniuObject {
+    @Nonnull
+    private final String objectName;
+    private final long offset, size, putTime;
+    private final boolean compressed;
+    @CheckForNull
+    private final String hash;
+
+    QiniuObject(@Nonnull final String objectName, final long offset, final long size, final long putTime,
+            final boolean compressed, @CheckForNull final String hash) {
+        this.objectName = objectName;
+        this.offset = offset;
+        this.size = size;
+        this.putTime = putTime;
+        this.compressed = compressed;
+        this.hash = hash == null || hash.isEmpty() ? null : hash;
+    }
+
+    long getSize() {
+        return this.size;
+    }
+
+    // The etag identifies the content wherever it is stored, so the same file archived by different builds shares
+    // one cache entry. Without it the put time stands in, since it changes whenever an object is written again.
+    @Nonnull
+    String getCacheKey(@Nonnull final QiniuConfig config) {
+        if (this.hash != null) {
+            return String.join(QiniuFileSystem.SEPARATOR, "etag", this.hash, String.valueOf(this.size));
+        }
+        return String.join(QiniuFileSystem.SEPARATOR, config.getBucketName(), String.valueOf(this.putTime),
+                String.valueOf(this.offset), String.valueOf(this.size), this.objectName);
+    }
+
+    @Nonnull
+    InputStream open(@Nonnull final QiniuConfig config) throws IOException {
+        if (this.compressed) {
+            return new GZIPInputStream(QiniuUtils.openObject(config, this.objectName));
+        }
+        return new QiniuRangeInputStream(config, this.objectName, this.offset, this.size);
+    }
+}
@@ -0,0 +1,133 @@
+package io.jenkins.plugins;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import com.qiniu.util.Etag;
+import com.qiniu.util.StringMap;
+
+@Restricted(NoExternalUse.class)
+final class QiniuPack {
+    private static final Logger LOG = Logger.getLogger(QiniuPack.class.getName());
+    private static final String SUFFIX = ".qiniu-artifact-packs";
+    static final long SMALL_FILE_THRESHOLD = 64 * 1024;
+    private static final long PACK_SIZE = 64 * 1024 * 1024;
+
+    private QiniuPack() {
+    }
+
+    @Nonnull
+    static String getObjectNamePrefix(@Nonnull final String objectNamePrefix) {
+        String name = objectNamePrefix;
+        while (name.endsWith(QiniuFileSystem.SEPARATOR)) {
+            name = name.substring(0, name.length() - 1);
+        }
+        return name + SUFFIX + QiniuFileSystem.SEPARATOR;
+    }
+
+    static void deleteAll(@Nonnull final QiniuConfig config, @Nonnull final String objectNamePrefix)
+            throws IOException {
+        QiniuUtils.deletePrefix(config.getBucketManager(), config.getBucketName(),
+                getObjectNamePrefix(objectNamePrefix));
+    }
+
+    static final class Writer implements AutoCloseable {
+        @Nonnull
+        private final QiniuConfig config;
+        @Nonnull
+        private final QiniuUploadTuner tuner;
+        @Nonnull
+        private final QiniuUploadPool pool;
+        @Nonnull
+        private final String packObjectNamePrefix;
+        @Nonnull
+        private final List<QiniuManifest.Entry> entries;
+        private final long putTime;
+        private int packCount = 0;
+        private File packFile;
+        private String packObjectName;
+        private OutputStream out;
+        private long offset;
+
+        Writer(@Nonnull final QiniuConfig config, @Nonnull final QiniuUploadTuner tuner,
+                @Nonnull final QiniuUploadPool pool, @Nonnull final String objectNamePrefix,
+                @Nonnull final List<QiniuManifest.Entry> entries, final long putTime) {
+            this.config = config;
+            this.tuner = tuner;
+            this.pool = pool;
+            this.packObjectNamePrefix = getObjectNamePrefix(objectNamePrefix);
+            this.entries = entries;
+            this.putTime = putTime;
+        }
+
+        void add(@Nonnull final String path, @Nonnull final File file) throws IOException, InterruptedException {
+            if (this.out == null) {
+                this.packFile = Files.createTempFile("qiniu-artifact-pack", ".bin").toFile();
+                this.packObjectName = this.packObjectNamePrefix + this.packCount++;
+                this.out = new BufferedOutputStream(new FileOutputStream(this.packFile));
+                this.offset = 0;
+            }
+            final byte[] data = Files.readAllBytes(file.toPath());
+            this.out.write(data);
+            this.entries.add(new QiniuManifest.Entry(path, this.packObjectName, data.length, Etag.data(data),
+                    this.putTime, this.offset));
+            this.offset += data.length;
+            if (this.offset >= PACK_SIZE) {
+                this.flush();
+            }
+        }
+
+        // Pack contents depend on the order the scan hands files over, so a pack is never resumed from the journal;
+        // an interrupted pack is built and uploaded again.
+        void flush() throws IOException, InterruptedException {
+            if (this.out == null) {
+                return;
+            }
+            this.out.close();
+            this.out = null;
+            final File packFile = this.packFile;
+            final String objectName = this.packObjectName;
+            final String uploadToken = this.config.getAuth().uploadToken(this.config.getBucketName(), objectName,
+                    24 * 3600, new StringMap().put("fileType", this.config.getFileType()));
+            this.packFile = null;
+            try {
+                this.pool.submit(() -> {
+                    try {
+                        this.tuner.put(packFile, objectName, uploadToken, null);
+                        LOG.log(Level.INFO, "Qiniu upload pack {0}", objectName);
+                    } finally {
+                        Files.deleteIfExists(packFile.toPath());
+                    }
+                });
+            } catch (InterruptedException e) {
+                Files.deleteIfExists(packFile.toPath());
+                throw e;
+            }
+        }
+
+        int getPackCount() {
+            return this.packCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.out != null) {
+                this.out.close();
+                this.out = null;
+                Files.deleteIfExists(this.packFile.toPath());
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.jenkins.plugins;
+
+import java.util.Arrays;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+// An immutable, platform independent path of object name segments. Parents share the segment array of their
+// children, and "." and ".." are resolved while parsing, the way Path.normalize() did.
+@Restricted(NoExternalUse.class)
+final class QiniuPath {
+    static final QiniuPath ROOT = new QiniuPath(new String[0], 0);
+
+    @Nonnull
+    private final String[] segments;
+    private final int count;
+    @CheckForNull
+    private String objectName;
+
+    private QiniuPath(@Nonnull final String[] segments, final int count) {
+        this.segments = segments;
+        this.count = count;
+    }
+
+    @Nonnull
+    static QiniuPath of(@CheckForNull final String objectName) {
+        if (objectName == null || objectName.isEmpty()) {
+            return ROOT;
+        }
+        return ROOT.resolve(objectName);
+    }
+
+    @Nonnull
+    QiniuPath resolve(@Nonnull final String name) {
+        if (name.indexOf(QiniuFileSystem.SEPARATOR_CHAR) < 0) {
+            if (name.isEmpty() || name.equals(".")) {
+                return this;
+            } else if (name.equals("..") && this.count > 0 && !this.segments[this.count - 1].equals("..")) {
+                return this.getParent();
+            }
+            final String[] segments = Arrays.copyOf(this.segments, this.count + 1);
+            segments[this.count] = name;
+            return new QiniuPath(segments, this.count + 1);
+        }
+        String[] segments = Arrays.copyOf(this.segments, this.count + 4);
+        int count = this.count;
+        int start = 0;
+        for (;;) {
+            int end = name.indexOf(QiniuFileSystem.SEPARATOR_CHAR, start);
+            if (end < 0) {
+                end = name.length();
+            }
+            if (end > start) {
+                final String segment = name.substring(start, end);
+                if (segment.equals("..") && count > 0 && !segments[count - 1].equals("..")) {
+                    count--;
+                } else if (!segment.equals(".")) {
+                    if (count == segments.length) {
+                        segments = Arrays.copyOf(segments, count * 2);
+                    }
+                    segments[count++] = segment;
+                }
+            }
+            if (end == name.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+        return new QiniuPath(segments, count);
+    }
+
+    @Nonnull
+    QiniuPath resolve(@Nonnull final QiniuPath other) {
+        if (other.count == 0) {
+            return this;
+        } else if (this.count == 0) {
+            return other;
+        }
+        final String[] segments = Arrays.copyOf(this.segments, this.count + other.count);
+        System.arraycopy(other.segments, 0, segments, this.count, other.count);
+        return new QiniuPath(segments, this.count + other.count);
+    }
+
+    @CheckForNull
+    QiniuPath getParent() {
+        if (this.count == 0) {
+            return null;
+        } else if (this.count == 1) {
+            return ROOT;
+        }
+        return new QiniuPath(this.segments, this.count - 1);
+    }
+
+    @CheckForNull
+    String getFileName() {
+        return this.count > 0 ? this.segments[this.count - 1] : null;
+    }
+
+    @Nonnull
+    String getName(final int index) {
+        if (index < 0 || index >= this.count) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return this.segments[index];
+    }
+
+    int getNameCount() {
+        return this.count;
+    }
+
+    boolean isRoot() {
+        return this.count == 0;
+    }
+
+    @Override
+    public String toString() {
+        String objectName = this.objectName;
+        if (objectName == null) {
+            final StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < this.count; i++) {
+                if (i > 0) {
+                    builder.append(QiniuFileSystem.SEPARATOR_CHAR);
+                }
+                builder.append(this.segments[i]);
+            }
+            objectName = builder.toString();
+            this.objectName = objectName;
+        }
+        return objectName;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object) {
+            return true;
+        } else if (!(object instanceof QiniuPath)) {
+            return false;
+        }
+        final QiniuPath other = (QiniuPath) object;
+        if (this.count != other.count) {
+            return false;
+        }
+        for (int i = this.count - 1; i >= 0; i--) {
+            if (!this.segments[i].equals(other.segments[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 1;
+        for (int i = 0; i < this.count; i++) {
+            hashCode = 31 * hashCode + this.segments[i].hashCode();
+        }
+        return hashCode;
+    }
+}
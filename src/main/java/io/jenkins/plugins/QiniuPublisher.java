@@ -11,7 +11,6 @@ import hudson.tasks.Publisher;
 import hudson.tasks.Recorder;
 import jenkins.model.ArtifactManagerConfiguration;
 import jenkins.tasks.SimpleBuildStep;
-import jenkins.util.BuildListenerAdapter;
 import org.apache.commons.lang3.StringUtils;
 import org.jenkinsci.Symbol;
 import org.kohsuke.accmod.Restricted;
@@ -21,7 +20,6 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -77,14 +75,14 @@ public final class QiniuPublisher extends Recorder implements SimpleBuildStep {
         }
         logger.println(Messages.QiniuPublisher_ARCHIVING_ARTIFACTS());
 
-        final ListFiles listFiles = new ListFiles(envVars.expand(this.includeFilesGlob),
+        final QiniuFileScanner scanner = new QiniuFileScanner(envVars.expand(this.includeFilesGlob),
                 envVars.expand(this.excludeFilesGlob), this.useDefaultExcludes, this.caseSensitive);
-        final Map<String, String> files = workspace.act(listFiles);
+        final QiniuArtifactManager artifactManager = (QiniuArtifactManager) run.pickArtifactManager();
+        final QiniuUploader.Summary summary = artifactManager.archive(workspace, taskListener, scanner);
 
-        if (!files.isEmpty()) {
-            final QiniuArtifactManager artifactManager = (QiniuArtifactManager) run.pickArtifactManager();
-            artifactManager.getMarker().useQiniuArtifactArchiver();
-            artifactManager.archive(workspace, launcher, BuildListenerAdapter.wrap(taskListener), files);
+        if (summary.fileCount > 0) {
+            logger.println(Messages.QiniuPublisher_ArchivedSummary(summary.fileCount,
+                    Functions.humanReadableByteSize(summary.byteCount)));
         } else {
             if (result == null || result.isBetterOrEqualTo(Result.UNSTABLE)) {
                 try {
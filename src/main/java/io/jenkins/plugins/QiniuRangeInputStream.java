@@ -0,0 +1,357 @@
+package io.jenkins.plugins;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+// A seekable stream over a byte range of one object. The range is fetched in fixed size chunks by HTTP Range
+// requests, a few chunks ahead of the reader in parallel, and a chunk whose connection drops is requested again
+// from its last received byte. When the server ignores Range, every chunk would download the whole object up to
+// it, so the stream falls back to a single sequential request, which is also resumed from the current position.
+// Objects no larger than one chunk are always read that way. All streams share a bounded pool of download threads
+// and a budget of read-ahead fetches. A fetch gives its share back when it finishes rather than when the reader
+// consumes it, so streams which are dropped without being closed cannot exhaust the budget.
+@Restricted(NoExternalUse.class)
+final class QiniuRangeInputStream extends InputStream {
+    private static final Logger LOG = Logger.getLogger(QiniuRangeInputStream.class.getName());
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int READ_AHEAD_CHUNKS = 4;
+    private static final int MAX_THREADS = 16;
+    private static final Semaphore READ_AHEAD_BUDGET = new Semaphore(32);
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_INTERVAL = 500;
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    @Nonnull
+    private final QiniuConfig config;
+    @Nonnull
+    private final String objectName;
+    private final long offset, length;
+    private final Deque<PendingChunk> pendingChunks = new ArrayDeque<>();
+    private final byte[] singleByte = new byte[1];
+    @CheckForNull
+    private byte[] chunk;
+    private int chunkIndex;
+    private long position, nextChunkPosition;
+    @CheckForNull
+    private InputStream sequentialStream;
+    private boolean sequential, closed;
+
+    QiniuRangeInputStream(@Nonnull final QiniuConfig config, @Nonnull final String objectName, final long offset,
+            final long length) {
+        this.config = config;
+        this.objectName = objectName;
+        this.offset = offset;
+        this.length = length;
+        this.sequential = length <= CHUNK_SIZE;
+    }
+
+    @Nonnull
+    private static ExecutorService createExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "QiniuRangeInputStream"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    long length() {
+        return this.length;
+    }
+
+    long getPosition() {
+        return this.position;
+    }
+
+    // Seeking inside the current chunk only moves the read index; anywhere else the read-ahead is dropped and
+    // restarted at the new position.
+    void seek(final long newPosition) throws IOException {
+        this.ensureOpen();
+        if (newPosition < 0 || newPosition > this.length) {
+            throw new EOFException("Cannot seek to " + newPosition + " of " + this.objectName);
+        } else if (this.sequential) {
+            if (newPosition != this.position) {
+                this.closeSequentialStream();
+                this.position = newPosition;
+            }
+            return;
+        }
+        if (this.chunk != null) {
+            final long chunkPosition = this.position - this.chunkIndex;
+            if (newPosition >= chunkPosition && newPosition < chunkPosition + this.chunk.length) {
+                this.chunkIndex = (int) (newPosition - chunkPosition);
+                this.position = newPosition;
+                return;
+            }
+        }
+        this.cancelPendingChunks();
+        this.chunk = null;
+        this.chunkIndex = 0;
+        this.position = newPosition;
+        this.nextChunkPosition = newPosition;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int count = this.read(this.singleByte, 0, 1);
+        return count < 0 ? -1 : this.singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        this.ensureOpen();
+        if (len == 0) {
+            return 0;
+        } else if (this.position >= this.length) {
+            return -1;
+        }
+        if (!this.sequential) {
+            try {
+                if (this.chunk == null || this.chunkIndex == this.chunk.length) {
+                    this.nextChunk();
+                }
+                final int count = Math.min(len, this.chunk.length - this.chunkIndex);
+                System.arraycopy(this.chunk, this.chunkIndex, b, off, count);
+                this.chunkIndex += count;
+                this.position += count;
+                return count;
+            } catch (RangeNotSupportedException e) {
+                LOG.log(Level.WARNING, "QiniuRangeInputStream::read(): {0} ignores Range, read sequentially",
+                        this.objectName);
+                this.cancelPendingChunks();
+                this.chunk = null;
+                this.chunkIndex = 0;
+                this.sequential = true;
+            }
+        }
+        return this.readSequentially(b, off, len);
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        final long skipped = Math.min(n, this.length - this.position);
+        this.seek(this.position + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        this.ensureOpen();
+        if (this.sequentialStream != null) {
+            return this.sequentialStream.available();
+        }
+        return this.chunk != null ? this.chunk.length - this.chunkIndex : 0;
+    }
+
+    @Override
+    public void close() {
+        if (!this.closed) {
+            this.closed = true;
+            this.cancelPendingChunks();
+            this.closeSequentialStream();
+            this.chunk = null;
+        }
+    }
+
+    private void nextChunk() throws IOException {
+        this.chunk = null;
+        this.scheduleChunks();
+        final PendingChunk pendingChunk = this.pendingChunks.removeFirst();
+        try {
+            this.chunk = get(pendingChunk.future);
+        } catch (IOException e) {
+            // The next read fetches the failed chunk again instead of skipping to the one after it
+            this.cancelPendingChunks();
+            this.nextChunkPosition = this.position;
+            throw e;
+        } finally {
+            pendingChunk.release();
+        }
+        this.chunkIndex = 0;
+        this.scheduleChunks();
+    }
+
+    // The chunk the reader waits for is always fetched, the chunks after it only while the shared budget lasts.
+    private void scheduleChunks() {
+        while (this.pendingChunks.size() < READ_AHEAD_CHUNKS && this.nextChunkPosition < this.length) {
+            final boolean readAhead = this.chunk != null || !this.pendingChunks.isEmpty();
+            if (readAhead && !READ_AHEAD_BUDGET.tryAcquire()) {
+                return;
+            }
+            final long chunkPosition = this.nextChunkPosition;
+            final int chunkSize = (int) Math.min(CHUNK_SIZE, this.length - chunkPosition);
+            final AtomicBoolean budgeted = new AtomicBoolean(readAhead);
+            this.pendingChunks.addLast(new PendingChunk(EXECUTOR.submit(() -> {
+                try {
+                    return this.fetch(chunkPosition, chunkSize);
+                } finally {
+                    release(budgeted);
+                }
+            }), budgeted));
+            this.nextChunkPosition += chunkSize;
+        }
+    }
+
+    @Nonnull
+    private byte[] fetch(final long chunkPosition, final int chunkSize) throws IOException, InterruptedException {
+        final byte[] data = new byte[chunkSize];
+        int filled = 0;
+        for (int attempt = 1;; attempt++) {
+            try (InputStream in = QiniuUtils.openObjectPartialRange(this.config, this.objectName,
+                    this.offset + chunkPosition + filled, chunkSize - filled)) {
+                if (in == null) {
+                    throw new RangeNotSupportedException(this.objectName);
+                }
+                while (filled < chunkSize) {
+                    final int count = in.read(data, filled, chunkSize - filled);
+                    if (count < 0) {
+                        throw new EOFException("Unexpected end of " + this.objectName + " at "
+                                + (chunkPosition + filled));
+                    }
+                    filled += count;
+                }
+                return data;
+            } catch (FileNotFoundException | RangeNotSupportedException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                LOG.log(Level.WARNING, "QiniuRangeInputStream::fetch(): retry {0} at {1}: {2}",
+                        new Object[] { this.objectName, chunkPosition + filled, e });
+                Thread.sleep(RETRY_INTERVAL * attempt);
+            }
+        }
+    }
+
+    private int readSequentially(final byte[] b, final int off, final int len) throws IOException {
+        for (int attempt = 1;; attempt++) {
+            try {
+                if (this.sequentialStream == null) {
+                    this.sequentialStream = QiniuUtils.openObjectRange(this.config, this.objectName,
+                            this.offset + this.position, this.length - this.position);
+                }
+                final int count = this.sequentialStream.read(b, off, (int) Math.min(len, this.length - this.position));
+                if (count < 0) {
+                    throw new EOFException("Unexpected end of " + this.objectName + " at " + this.position);
+                }
+                this.position += count;
+                return count;
+            } catch (FileNotFoundException e) {
+                throw e;
+            } catch (IOException e) {
+                this.closeSequentialStream();
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                LOG.log(Level.WARNING, "QiniuRangeInputStream::readSequentially(): retry {0} at {1}: {2}",
+                        new Object[] { this.objectName, this.position, e });
+                try {
+                    Thread.sleep(RETRY_INTERVAL * attempt);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Download is interrupted");
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    private static byte[] get(@Nonnull final Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download is interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof InterruptedException) {
+                throw new InterruptedIOException("Download is interrupted");
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void cancelPendingChunks() {
+        for (PendingChunk pendingChunk : this.pendingChunks) {
+            pendingChunk.future.cancel(true);
+            pendingChunk.release();
+        }
+        this.pendingChunks.clear();
+    }
+
+    private void closeSequentialStream() {
+        if (this.sequentialStream != null) {
+            try {
+                this.sequentialStream.close();
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "QiniuRangeInputStream::closeSequentialStream(): {0}", e);
+            }
+            this.sequentialStream = null;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private static void release(@Nonnull final AtomicBoolean budgeted) {
+        if (budgeted.compareAndSet(true, false)) {
+            READ_AHEAD_BUDGET.release();
+        }
+    }
+
+    // A fetch cancelled before it started never runs its own release, so the reader releases it as well
+    private static final class PendingChunk {
+        @Nonnull
+        private final Future<byte[]> future;
+        @Nonnull
+        private final AtomicBoolean budgeted;
+
+        PendingChunk(@Nonnull final Future<byte[]> future, @Nonnull final AtomicBoolean budgeted) {
+            this.future = future;
+            this.budgeted = budgeted;
+        }
+
+        void release() {
+            QiniuRangeInputStream.release(this.budgeted);
+        }
+    }
+
+    private static final class RangeNotSupportedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RangeNotSupportedException(@Nonnull final String objectName) {
+            super(objectName + " does not support Range requests");
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package io.jenkins.plugins;
+
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import antlr.ANTLRException;
+import hudson.Util;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.remoting.VirtualChannel;
+
+// Upload rates are token buckets kept on the controller, one for the limits of the whole controller and one per
+// agent for the limits of its labels, so every archive running at the same time shares them. Archives running on
+// an agent lease their tokens through a proxy of the buckets. A bucket lives only as long as an archive uses it, so
+// buckets of limits which were changed or removed do not pile up.
+@Restricted(NoExternalUse.class)
+public final class QiniuRateLimiter implements Serializable {
+    private static final long serialVersionUID = 2L;
+    private static final Logger LOG = Logger.getLogger(QiniuRateLimiter.class.getName());
+    private static final Map<String, WeakReference<Bucket>> BUCKETS = new HashMap<>();
+
+    @CheckForNull
+    private final Budget budget;
+    private final AtomicLong uploadedBytes = new AtomicLong();
+
+    private QiniuRateLimiter(@CheckForNull final Budget budget) {
+        this.budget = budget;
+    }
+
+    long getUploadedBytes() {
+        return this.uploadedBytes.get();
+    }
+
+    void acquireUpload(final long size, final long partSize) throws InterruptedException {
+        long requests = 1;
+        if (partSize > 0) {
+            requests = (size + partSize - 1) / partSize + 2;
+        }
+        this.acquire(size, requests);
+        this.uploadedBytes.addAndGet(size);
+    }
+
+    void acquire(final long bytes, final long requests) throws InterruptedException {
+        if (this.budget == null) {
+            return;
+        }
+        final long waitNanos = this.budget.take(bytes, requests);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    @Nonnull
+    static QiniuRateLimiter create(@Nonnull final QiniuConfig config, @CheckForNull final Node node,
+            @CheckForNull final VirtualChannel channel) {
+        final List<Bucket> buckets = new ArrayList<>();
+        final long bytesPerSecond = config.getUploadBandwidthLimit() * 1024L;
+        final long requestsPerSecond = config.getUploadRequestRateLimit();
+        if (bytesPerSecond > 0 || requestsPerSecond > 0) {
+            buckets.add(getBucket("controller", bytesPerSecond, requestsPerSecond));
+        }
+        if (node != null) {
+            long nodeBytesPerSecond = 0, nodeRequestsPerSecond = 0;
+            for (LabelLimit labelLimit : parseLabelLimits(config.getLabelUploadLimits())) {
+                if (labelLimit.label.matches(node)) {
+                    nodeBytesPerSecond = min(nodeBytesPerSecond, labelLimit.bandwidthLimit * 1024L);
+                    nodeRequestsPerSecond = min(nodeRequestsPerSecond, labelLimit.requestRateLimit);
+                }
+            }
+            if (nodeBytesPerSecond > 0 || nodeRequestsPerSecond > 0) {
+                buckets.add(getBucket("node:" + node.getNodeName(), nodeBytesPerSecond, nodeRequestsPerSecond));
+            }
+        }
+        if (buckets.isEmpty()) {
+            return new QiniuRateLimiter(null);
+        }
+        LOG.log(Level.INFO, "QiniuRateLimiter::create(): {0}", buckets);
+        final Budget budget = new SharedBudget(buckets);
+        return new QiniuRateLimiter(channel != null ? channel.export(Budget.class, budget) : budget);
+    }
+
+    // Changing a limit starts a new bucket; entries whose bucket was collected are dropped on the way
+    @Nonnull
+    private static Bucket getBucket(@Nonnull final String scope, final long bytesPerSecond,
+            final long requestsPerSecond) {
+        final String key = scope + "/" + bytesPerSecond + "/" + requestsPerSecond;
+        synchronized (BUCKETS) {
+            BUCKETS.values().removeIf((WeakReference<Bucket> reference) -> reference.get() == null);
+            final WeakReference<Bucket> reference = BUCKETS.get(key);
+            Bucket bucket = reference != null ? reference.get() : null;
+            if (bucket == null) {
+                bucket = new Bucket(key, bytesPerSecond, requestsPerSecond);
+                BUCKETS.put(key, new WeakReference<>(bucket));
+            }
+            return bucket;
+        }
+    }
+
+    private static long min(final long limit, final long otherLimit) {
+        if (limit <= 0) {
+            return otherLimit;
+        } else if (otherLimit <= 0) {
+            return limit;
+        }
+        return Math.min(limit, otherLimit);
+    }
+
+    // Called on the controller, returns how long the caller has to wait for the tokens it took
+    public interface Budget {
+        long take(long bytes, long requests);
+    }
+
+    private static final class SharedBudget implements Budget {
+        @Nonnull
+        private final List<Bucket> buckets;
+
+        SharedBudget(@Nonnull final List<Bucket> buckets) {
+            this.buckets = buckets;
+        }
+
+        @Override
+        public long take(final long bytes, final long requests) {
+            long waitNanos = 0;
+            for (Bucket bucket : this.buckets) {
+                waitNanos = Math.max(waitNanos, bucket.take(bytes, requests));
+            }
+            return waitNanos;
+        }
+    }
+
+    private static final class Bucket {
+        @Nonnull
+        private final String name;
+        private final long bytesPerSecond, requestsPerSecond;
+        private double availableBytes, availableRequests;
+        private long lastRefillTime;
+
+        Bucket(@Nonnull final String name, final long bytesPerSecond, final long requestsPerSecond) {
+            this.name = name;
+            this.bytesPerSecond = bytesPerSecond;
+            this.requestsPerSecond = requestsPerSecond;
+            this.availableBytes = bytesPerSecond;
+            this.availableRequests = requestsPerSecond;
+            this.lastRefillTime = System.nanoTime();
+        }
+
+        // Tokens may go negative so a single file larger than the bucket is still admitted; the caller then waits
+        // until the debt is paid back, which keeps the long term rate at the configured limit.
+        synchronized long take(final long bytes, final long requests) {
+            final long now = System.nanoTime();
+            final double elapsedSeconds = (now - this.lastRefillTime) / 1e9;
+            this.lastRefillTime = now;
+            long waitNanos = 0;
+            if (this.bytesPerSecond > 0) {
+                this.availableBytes = Math.min(this.bytesPerSecond,
+                        this.availableBytes + elapsedSeconds * this.bytesPerSecond) - bytes;
+                if (this.availableBytes < 0) {
+                    waitNanos = Math.max(waitNanos, (long) (-this.availableBytes / this.bytesPerSecond * 1e9));
+                }
+            }
+            if (this.requestsPerSecond > 0) {
+                this.availableRequests = Math.min(this.requestsPerSecond,
+                        this.availableRequests + elapsedSeconds * this.requestsPerSecond) - requests;
+                if (this.availableRequests < 0) {
+                    waitNanos = Math.max(waitNanos,
+                            (long) (-this.availableRequests / this.requestsPerSecond * 1e9));
+                }
+            }
+            return waitNanos;
+        }
+
+        @Override
+        public String toString() {
+            return this.name;
+        }
+    }
+
+    static final class LabelLimit {
+        @Nonnull
+        final Label label;
+        final int bandwidthLimit, requestRateLimit;
+
+        LabelLimit(@Nonnull final Label label, final int bandwidthLimit, final int requestRateLimit) {
+            this.label = label;
+            this.bandwidthLimit = bandwidthLimit;
+            this.requestRateLimit = requestRateLimit;
+        }
+    }
+
+    @Nonnull
+    static List<LabelLimit> parseLabelLimits(@Nonnull final String labelLimits) throws IllegalArgumentException {
+        final List<LabelLimit> result = new ArrayList<>();
+        for (String line : labelLimits.split("\\r?\\n")) {
+            line = Util.fixEmptyAndTrim(line);
+            if (line == null || line.startsWith("#")) {
+                continue;
+            }
+            final int index = line.lastIndexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("Expected <label expression>=<KB/s>[,<requests/s>]: " + line);
+            }
+            final String[] limits = line.substring(index + 1).split(",");
+            if (limits.length > 2) {
+                throw new IllegalArgumentException("Expected <label expression>=<KB/s>[,<requests/s>]: " + line);
+            }
+            final int bandwidthLimit = parseLimit(limits[0], line);
+            int requestRateLimit = 0;
+            if (limits.length == 2) {
+                requestRateLimit = parseLimit(limits[1], line);
+            }
+            try {
+                result.add(new LabelLimit(Label.parseExpression(line.substring(0, index).trim()), bandwidthLimit,
+                        requestRateLimit));
+            } catch (ANTLRException e) {
+                throw new IllegalArgumentException("Invalid label expression: " + line, e);
+            }
+        }
+        return result;
+    }
+
+    private static int parseLimit(@Nonnull final String limit, @Nonnull final String line) {
+        try {
+            final int value = Integer.parseInt(limit.trim());
+            if (value < 0) {
+                throw new IllegalArgumentException("Limit must not be negative: " + line);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit: " + line, e);
+        }
+    }
+}
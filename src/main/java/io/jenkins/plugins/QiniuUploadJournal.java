@@ -0,0 +1,85 @@
+package io.jenkins.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import com.qiniu.storage.Recorder;
+import com.qiniu.storage.persistent.FileRecorder;
+
+import hudson.FilePath;
+import hudson.slaves.WorkspaceList;
+
+@Restricted(NoExternalUse.class)
+final class QiniuUploadJournal {
+    private static final Logger LOG = Logger.getLogger(QiniuUploadJournal.class.getName());
+    private static final String DIRECTORY_NAME = "qiniu-upload-journal";
+    private static final String COMPRESSED_DIRECTORY_NAME = "compressed";
+    private static final long EXPIRY = TimeUnit.DAYS.toMillis(5);
+
+    private QiniuUploadJournal() {
+    }
+
+    @CheckForNull
+    private static File getDirectory(@Nonnull final File workspace, @Nonnull final String name) throws IOException {
+        final FilePath tempDirectory = WorkspaceList.tempDir(new FilePath(workspace));
+        if (tempDirectory == null) {
+            return null;
+        }
+        final File directory = new File(tempDirectory.getRemote(), name);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+        expire(directory);
+        return directory;
+    }
+
+    @CheckForNull
+    static Recorder open(@Nonnull final File workspace) {
+        try {
+            final File directory = getDirectory(workspace, DIRECTORY_NAME);
+            return directory != null ? new FileRecorder(directory) : null;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "QiniuUploadJournal::open() error, uploads will not be resumable", e);
+            return null;
+        }
+    }
+
+    // Compressed copies are kept next to the journal, since the journal is keyed by the path of the uploaded file
+    // and a resumed upload needs the same path and bytes.
+    @CheckForNull
+    static File openCompressedDirectory(@Nonnull final File workspace) {
+        try {
+            return getDirectory(workspace, DIRECTORY_NAME + File.separator + COMPRESSED_DIRECTORY_NAME);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING,
+                    "QiniuUploadJournal::openCompressedDirectory() error, compressed uploads will not be resumable", e);
+            return null;
+        }
+    }
+
+    private static void expire(@Nonnull final File directory) {
+        final File[] journals = directory.listFiles();
+        if (journals == null) {
+            return;
+        }
+        final long expiredBefore = System.currentTimeMillis() - EXPIRY;
+        for (File journal : journals) {
+            if (journal.isFile() && journal.lastModified() < expiredBefore) {
+                if (journal.delete()) {
+                    LOG.log(Level.INFO, "QiniuUploadJournal::expire(): {0}", journal.getName());
+                } else {
+                    LOG.log(Level.WARNING, "QiniuUploadJournal::expire(): failed to delete {0}", journal);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package io.jenkins.plugins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+@Restricted(NoExternalUse.class)
+final class QiniuUploadPool implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(QiniuUploadPool.class.getName());
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    private final int capacity;
+    private final List<IOException> errors = new ArrayList<>();
+    private final AtomicInteger submittedCount = new AtomicInteger(), failedCount = new AtomicInteger();
+
+    QiniuUploadPool(final int concurrency) {
+        final int threads = Math.max(1, concurrency);
+        this.capacity = threads * 2;
+        this.slots = new Semaphore(this.capacity);
+        this.executor = Executors.newFixedThreadPool(threads,
+                new NamingThreadFactory(new DaemonThreadFactory(), "QiniuUploadPool"));
+    }
+
+    void submit(@Nonnull final UploadTask task) throws InterruptedException {
+        this.slots.acquire();
+        this.submittedCount.incrementAndGet();
+        try {
+            this.executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    this.recordError(new IOException("Upload is interrupted", e));
+                } catch (IOException e) {
+                    this.recordError(e);
+                } catch (RuntimeException e) {
+                    this.recordError(new IOException(e));
+                } finally {
+                    this.slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.slots.release();
+            throw new InterruptedException("QiniuUploadPool is closed");
+        }
+    }
+
+    void awaitCompletion() throws IOException, InterruptedException {
+        this.slots.acquire(this.capacity);
+        this.slots.release(this.capacity);
+
+        synchronized (this.errors) {
+            if (this.errors.isEmpty()) {
+                return;
+            }
+            final IOException err = new IOException(String.format("%d of %d uploads failed, first error: %s",
+                    this.failedCount.get(), this.submittedCount.get(), this.errors.get(0).getMessage()),
+                    this.errors.get(0));
+            for (int i = 1; i < this.errors.size(); i++) {
+                err.addSuppressed(this.errors.get(i));
+            }
+            throw err;
+        }
+    }
+
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+        try {
+            if (!this.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOG.log(Level.WARNING, "QiniuUploadPool workers did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void recordError(@Nonnull final IOException e) {
+        LOG.log(Level.WARNING, "Qiniu upload task failed", e);
+        this.failedCount.incrementAndGet();
+        synchronized (this.errors) {
+            if (this.errors.size() < MAX_REPORTED_ERRORS) {
+                this.errors.add(e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    static interface UploadTask {
+        void run() throws IOException, InterruptedException;
+    }
+}
@@ -0,0 +1,166 @@
+package io.jenkins.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import com.qiniu.common.QiniuException;
+import com.qiniu.http.Response;
+import com.qiniu.storage.Configuration;
+import com.qiniu.storage.Recorder;
+import com.qiniu.storage.UploadManager;
+import com.qiniu.util.StringMap;
+
+// One tuner is shared by all upload threads of a build. Its concurrency is the number of parts in flight across
+// all of them, so the latency it measures is that of the whole upload rather than of one file competing with others.
+@Restricted(NoExternalUse.class)
+final class QiniuUploadTuner {
+    private static final Logger LOG = Logger.getLogger(QiniuUploadTuner.class.getName());
+    private static final long MIN_PART_SIZE = 1024 * 1024;
+    private static final long MAX_PART_SIZE = 1024 * 1024 * 1024;
+    private static final long TARGET_PART_COUNT = 1000;
+    private static final int MAX_CONCURRENCY = 32;
+    private static final int MAX_THROTTLED_RETRIES = 3;
+
+    @Nonnull
+    private final QiniuConfig config;
+    @Nonnull
+    private final Configuration configuration;
+    @CheckForNull
+    private final Recorder recorder;
+    @Nonnull
+    private final QiniuClients clients;
+    @Nonnull
+    private final UploadManager uploadManager;
+    @Nonnull
+    private final QiniuRateLimiter rateLimiter;
+    private final boolean adaptive;
+    private final long threshold;
+    private int concurrency, inFlightParts;
+    private double bestPartLatency = Double.MAX_VALUE;
+
+    QiniuUploadTuner(@Nonnull final QiniuConfig config, @CheckForNull final Recorder recorder,
+            @Nonnull final QiniuRateLimiter rateLimiter) {
+        this.config = config;
+        this.clients = QiniuClients.get(config);
+        this.configuration = this.clients.getConfiguration();
+        this.recorder = recorder;
+        this.uploadManager = recorder == null ? this.clients.getUploadManager()
+                : new UploadManager(this.configuration, this.clients.getClient(), recorder);
+        this.rateLimiter = rateLimiter;
+        this.adaptive = config.isAdaptiveMultipartUpload();
+        this.threshold = config.getMultipartUploadThreshold() * 1024L * 1024L;
+        this.concurrency = Math.max(1, config.getMultipartUploadConcurrency());
+    }
+
+    @Nonnull
+    Response put(@Nonnull final File file, @Nonnull final String objectName, @Nonnull final String uploadToken,
+            @CheckForNull final StringMap params) throws IOException, InterruptedException {
+        final long size = file.length();
+        if (size <= this.threshold) {
+            this.rateLimiter.acquireUpload(size, 0);
+            return this.uploadManager.put(file, objectName, uploadToken, params, null, true);
+        }
+        if (!this.adaptive) {
+            this.rateLimiter.acquireUpload(size, this.config.getMultipartUploadPartSize() * 1024L * 1024L);
+            return this.uploadManager.put(file, objectName, uploadToken, params, null, true);
+        }
+
+        final long partSize = getPartSize(size, this.config.getMultipartUploadPartSize() * 1024L * 1024L);
+        final long partCount = (size + partSize - 1) / partSize;
+        this.rateLimiter.acquireUpload(size, partSize);
+        for (int retries = 0;; retries++) {
+            final int concurrency = this.acquireParts(partCount);
+            final Configuration configuration = this.configuration.clone();
+            configuration.resumableUploadAPIV2BlockSize = (int) partSize;
+            configuration.resumableUploadMaxConcurrentTaskCount = concurrency;
+            LOG.log(Level.INFO, "QiniuUploadTuner::put() {0}: {1} bytes, part size {2}, {3} parts, concurrency {4}",
+                    new Object[] { objectName, size, partSize, partCount, concurrency });
+            final long startTime = System.nanoTime();
+            try {
+                final UploadManager uploadManager = new UploadManager(configuration, this.clients.getClient(),
+                        this.recorder);
+                final Response response = uploadManager.put(file, objectName, uploadToken, params, null, true);
+                final long waves = (partCount + concurrency - 1) / concurrency;
+                this.onSuccess(objectName, (System.nanoTime() - startTime) / 1e9 / waves / (partSize / 1048576.0));
+                return response;
+            } catch (QiniuException e) {
+                if (!isThrottled(e) || retries >= MAX_THROTTLED_RETRIES) {
+                    throw e;
+                }
+                this.onThrottled(objectName, e.code());
+            } finally {
+                this.releaseParts(concurrency);
+            }
+        }
+    }
+
+    // Qiniu accepts 1 MB to 1 GB parts and at most 10000 of them; aim for about 1000 parts so that the
+    // per-part overhead stays small without making a single retried part too expensive.
+    static long getPartSize(final long fileSize, final long configuredPartSize) {
+        final long wanted = Math.max(configuredPartSize, (fileSize + TARGET_PART_COUNT - 1) / TARGET_PART_COUNT);
+        long partSize = MIN_PART_SIZE;
+        while (partSize < wanted && partSize < MAX_PART_SIZE) {
+            partSize *= 2;
+        }
+        return partSize;
+    }
+
+    // Grants a file as many of the free part slots as it has parts, waiting until at least one is free.
+    private synchronized int acquireParts(final long partCount) throws InterruptedException {
+        while (this.inFlightParts >= this.concurrency) {
+            this.wait();
+        }
+        final int parts = (int) Math.min(partCount, this.concurrency - this.inFlightParts);
+        this.inFlightParts += parts;
+        return parts;
+    }
+
+    private synchronized void releaseParts(final int parts) {
+        this.inFlightParts -= parts;
+        this.notifyAll();
+    }
+
+    // Additive increase while the per-part latency stays close to the best one seen, multiplicative decrease
+    // when it degrades or the service reports overload.
+    private synchronized void onSuccess(@Nonnull final String objectName, final double partLatency) {
+        final int previous = this.concurrency;
+        final String reason;
+        if (partLatency < this.bestPartLatency) {
+            this.bestPartLatency = partLatency;
+        }
+        if (partLatency > this.bestPartLatency * 2) {
+            this.concurrency = Math.max(1, this.concurrency / 2);
+            reason = "latency degraded";
+        } else if (partLatency <= this.bestPartLatency * 1.5) {
+            this.concurrency = Math.min(MAX_CONCURRENCY, this.concurrency + 1);
+            reason = "latency stable";
+        } else {
+            reason = "latency rising";
+        }
+        LOG.log(Level.INFO,
+                "QiniuUploadTuner::onSuccess() {0}: {1} s/MB per part, best {2} s/MB, {3}, concurrency {4} -> {5}",
+                new Object[] { objectName, partLatency, this.bestPartLatency, reason, previous, this.concurrency });
+    }
+
+    private synchronized void onThrottled(@Nonnull final String objectName, final int code) {
+        final int previous = this.concurrency;
+        this.concurrency = Math.max(1, this.concurrency / 2);
+        LOG.log(Level.WARNING, "QiniuUploadTuner::onThrottled() {0}: status {1}, concurrency {2} -> {3}, retrying",
+                new Object[] { objectName, code, previous, this.concurrency });
+    }
+
+    // Only gateway, overload and Qiniu's transient 599 errors are retried; other 5xx codes such as 500 or 579
+    // (callback failed) would fail the same way again.
+    private static boolean isThrottled(@Nonnull final QiniuException e) {
+        final int code = e.code();
+        return code == 502 || code == 503 || code == 504 || code == 573 || code == 599;
+    }
+}
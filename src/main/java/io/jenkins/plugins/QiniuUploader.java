@@ -1,81 +1,509 @@
 package io.jenkins.plugins;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
+import org.apache.tools.ant.types.selectors.SelectorUtils;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
-import com.qiniu.storage.Configuration;
+import com.qiniu.common.QiniuException;
 import com.qiniu.storage.UploadManager;
+import com.qiniu.storage.model.DefaultPutRet;
+import com.qiniu.storage.model.FileInfo;
 import com.qiniu.util.Auth;
+import com.qiniu.util.Etag;
 import com.qiniu.util.StringMap;
 
+import hudson.Util;
 import hudson.model.TaskListener;
 import hudson.remoting.VirtualChannel;
 import jenkins.MasterToSlaveFileCallable;
 
 @Restricted(NoExternalUse.class)
-final class QiniuUploader extends MasterToSlaveFileCallable<Void> {
+final class QiniuUploader extends MasterToSlaveFileCallable<QiniuUploader.Summary> {
     private static final Logger LOG = Logger.getLogger(QiniuUploader.class.getName());
 
     @Nonnull
     private final String objectNamePrefix;
     @Nonnull
     private final QiniuConfig config;
-    @Nonnull
+    @CheckForNull
+    private final String previousObjectNamePrefix;
+    @CheckForNull
     private final Map<String, String> artifactURLs;
+    @CheckForNull
+    private final QiniuFileScanner scanner;
+    @Nonnull
+    private final QiniuRateLimiter rateLimiter;
     private final TaskListener listener;
 
     QiniuUploader(@Nonnull QiniuConfig config, @Nonnull Map<String, String> artifactURLs,
-            @Nonnull String objectNamePrefix, TaskListener listener) {
+            @Nonnull String objectNamePrefix, @CheckForNull String previousObjectNamePrefix,
+            @Nonnull QiniuRateLimiter rateLimiter, TaskListener listener) {
+        this(config, artifactURLs, null, objectNamePrefix, previousObjectNamePrefix, rateLimiter, listener);
+    }
+
+    QiniuUploader(@Nonnull QiniuConfig config, @Nonnull QiniuFileScanner scanner,
+            @Nonnull String objectNamePrefix, @CheckForNull String previousObjectNamePrefix,
+            @Nonnull QiniuRateLimiter rateLimiter, TaskListener listener) {
+        this(config, null, scanner, objectNamePrefix, previousObjectNamePrefix, rateLimiter, listener);
+    }
+
+    private QiniuUploader(@Nonnull QiniuConfig config, @CheckForNull Map<String, String> artifactURLs,
+            @CheckForNull QiniuFileScanner scanner, @Nonnull String objectNamePrefix,
+            @CheckForNull String previousObjectNamePrefix, @Nonnull QiniuRateLimiter rateLimiter,
+            TaskListener listener) {
         this.config = config;
         this.artifactURLs = artifactURLs;
+        this.scanner = scanner;
         this.objectNamePrefix = objectNamePrefix;
+        this.previousObjectNamePrefix = previousObjectNamePrefix;
+        this.rateLimiter = rateLimiter;
         this.listener = listener;
     }
 
     @Override
-    public Void invoke(File root, VirtualChannel virtualChannel) throws IOException, InterruptedException {
-        if (this.artifactURLs.isEmpty()) {
-            return null;
+    public Summary invoke(File root, VirtualChannel virtualChannel) throws IOException, InterruptedException {
+        if (this.artifactURLs != null && this.artifactURLs.isEmpty()) {
+            return new Summary(0, 0);
         }
 
         Initializer.setAppName();
 
+        // Nothing is cleaned up when nothing matched, the build keeps the artifacts of its earlier archive steps
+        if (this.scanner != null && !this.scanner.hasArtifacts(root)) {
+            LOG.log(Level.INFO, "Qiniu found no artifacts to upload in {0}", root);
+            return new Summary(0, 0);
+        }
+
+        final long startTime = System.nanoTime();
+        final Summary summary;
         try {
-            this.deleteFiles();
-            this.uploadFiles(root);
+            if (this.config.isContentAddressableStorage()) {
+                this.deleteFiles();
+                summary = this.uploadFilesToContentStore(root);
+            } else {
+                final String[] compressedFilePatterns = getCompressedFilePatterns(this.config.getCompressedFiles());
+                Map<String, FileInfo> remoteFiles = Collections.emptyMap();
+                Set<String> objectNames = null;
+                if (this.config.isIncrementalArchive()) {
+                    remoteFiles = this.listRemoteFiles();
+                    objectNames = ConcurrentHashMap.newKeySet();
+                    QiniuManifest.delete(this.config, this.objectNamePrefix);
+                    QiniuPack.deleteAll(this.config, this.objectNamePrefix);
+                } else {
+                    this.deleteFiles();
+                }
+
+                int flags = 0;
+                if (this.config.isPackSmallFiles()) {
+                    flags |= QiniuManifest.FLAG_PACKED;
+                }
+                if (compressedFilePatterns.length > 0) {
+                    flags |= QiniuManifest.FLAG_COMPRESSED;
+                }
+                final List<QiniuManifest.Entry> entries = Collections.synchronizedList(new ArrayList<>());
+                summary = this.uploadFiles(root, remoteFiles, compressedFilePatterns, entries, objectNames);
+                if (objectNames != null) {
+                    this.deleteStaleFiles(remoteFiles, objectNames);
+                }
+                if (summary.fileCount > 0) {
+                    this.uploadManifest(flags, entries);
+                }
+            }
+            this.printThroughput(startTime);
         } finally {
             if (this.listener != null) {
                 this.listener.getLogger().flush();
             }
         }
         LOG.log(Level.INFO, "Qiniu uploading is done");
-        return null;
+        return summary;
+    }
+
+    private void forEachArtifact(final File root, @Nonnull final QiniuFileScanner.ArtifactConsumer consumer)
+            throws IOException, InterruptedException {
+        if (this.scanner != null) {
+            this.scanner.scan(root, consumer);
+        } else if (this.artifactURLs != null) {
+            for (Map.Entry<String, String> entry : this.artifactURLs.entrySet()) {
+                consumer.accept(entry.getKey(), entry.getValue());
+            }
+        }
     }
 
     private void deleteFiles() throws IOException {
         QiniuUtils.deletePrefix(this.config.getBucketManager(), this.config.getBucketName(), this.objectNamePrefix);
+        QiniuManifest.delete(this.config, this.objectNamePrefix);
+        QiniuPack.deleteAll(this.config, this.objectNamePrefix);
         LOG.log(Level.INFO, "Qiniu pre-clean {0} done", new Object[] { this.objectNamePrefix });
     }
 
-    private void uploadFiles(final File root) throws IOException {
-        final Configuration config = this.config.getConfiguration();
-        final UploadManager uploadManager = new UploadManager(config);
+    @Nonnull
+    private Map<String, FileInfo> listRemoteFiles() throws IOException {
+        final Map<String, FileInfo> remoteFiles = new HashMap<>();
+        QiniuUtils.listPrefix(this.config.getBucketManager(), this.config.getBucketName(), this.objectNamePrefix,
+                (FileInfo fileInfo) -> remoteFiles.put(fileInfo.key, fileInfo));
+        return remoteFiles;
+    }
+
+    @Nonnull
+    private Map<Long, Map<String, String>> listPreviousFiles() throws IOException {
+        final Map<Long, Map<String, String>> previousFiles = new HashMap<>();
+        if (this.previousObjectNamePrefix == null) {
+            return previousFiles;
+        }
+        final int flags = QiniuManifest.load(this.config, this.previousObjectNamePrefix,
+                (QiniuManifest.Entry entry) -> {
+                    if (!entry.isPacked() && !entry.isCompressed()) {
+                        previousFiles.computeIfAbsent(entry.size, size -> new HashMap<>())
+                                .putIfAbsent(entry.hash, entry.objectName);
+                    }
+                });
+        if (flags == QiniuManifest.NOT_FOUND) {
+            QiniuUtils.listPrefix(this.config.getBucketManager(), this.config.getBucketName(),
+                    this.previousObjectNamePrefix,
+                    (FileInfo fileInfo) -> previousFiles.computeIfAbsent(fileInfo.fsize, size -> new HashMap<>())
+                            .putIfAbsent(fileInfo.hash, fileInfo.key));
+        }
+        LOG.log(Level.INFO, "Qiniu found {0} distinct sizes in previous build {1}",
+                new Object[] { previousFiles.size(), this.previousObjectNamePrefix });
+        return previousFiles;
+    }
+
+    private void deleteStaleFiles(@Nonnull final Map<String, FileInfo> remoteFiles,
+            @Nonnull final Set<String> objectNames) throws IOException {
+        final List<String> staleKeys = new ArrayList<>();
+        for (String key : remoteFiles.keySet()) {
+            if (!objectNames.contains(key)) {
+                staleKeys.add(key);
+            }
+        }
+        QiniuUtils.deleteKeys(this.config.getBucketManager(), this.config.getBucketName(), staleKeys);
+        LOG.log(Level.INFO, "Qiniu incremental clean {0} done, {1} stale files deleted",
+                new Object[] { this.objectNamePrefix, staleKeys.size() });
+    }
+
+    @Nonnull
+    private Summary uploadFiles(final File root, @Nonnull final Map<String, FileInfo> remoteFiles,
+            @Nonnull final String[] compressedFilePatterns, @CheckForNull final List<QiniuManifest.Entry> entries,
+            @CheckForNull final Set<String> objectNames) throws IOException, InterruptedException {
+        final QiniuUploadTuner tuner = new QiniuUploadTuner(this.config, QiniuUploadJournal.open(root),
+                this.rateLimiter);
+        final File compressedDirectory = compressedFilePatterns.length > 0
+                ? QiniuUploadJournal.openCompressedDirectory(root)
+                : null;
         final StringMap params = new StringMap().put("insertOnly", 1).put("fileType", this.config.getFileType());
-        final Auth auth = Auth.create(this.config.getAccessKey(), this.config.getSecretKey().getPlainText());
+        final StringMap overwriteParams = new StringMap().put("fileType", this.config.getFileType());
+        final Auth auth = this.config.getAuth();
         final String uploadToken = auth.uploadToken(this.config.getBucketName(), null, 24 * 3600, params);
-        for (Map.Entry<String, String> entry : this.artifactURLs.entrySet()) {
-            final String objectName = this.objectNamePrefix + entry.getValue();
-            final File file = new File(root, entry.getKey());
-            uploadManager.put(file, objectName, uploadToken, null, null, true);
-            LOG.log(Level.INFO, "Qiniu upload {0} to {1}", new Object[] { file.getAbsolutePath(), objectName });
+        final Map<Long, Map<String, String>> previousFiles = this.listPreviousFiles();
+        final QiniuUtils.BatchCopier copier = new QiniuUtils.BatchCopier(this.config.getBucketManager(),
+                this.config.getBucketName(), this.rateLimiter);
+        final Map<String, File> copiedFiles = new ConcurrentHashMap<>();
+        final AtomicInteger fileCount = new AtomicInteger(), packedCount = new AtomicInteger(),
+                unchangedCount = new AtomicInteger();
+        final AtomicLong byteCount = new AtomicLong();
+        final long putTime = System.currentTimeMillis() * 10000;
+        int packCount = 0;
+        try (QiniuUploadPool pool = new QiniuUploadPool(this.config.getUploadConcurrency());
+                QiniuPack.Writer packWriter = this.createPackWriter(tuner, pool, entries, putTime)) {
+            this.forEachArtifact(root, (String filePath, String path) -> {
+                final String objectName = this.objectNamePrefix + path;
+                final File file = new File(root, filePath);
+                final long size = file.length();
+                fileCount.incrementAndGet();
+                byteCount.addAndGet(size);
+                if (packWriter != null && size < QiniuPack.SMALL_FILE_THRESHOLD) {
+                    packWriter.add(path, file);
+                    packedCount.incrementAndGet();
+                    return;
+                }
+                if (objectNames != null) {
+                    objectNames.add(objectName);
+                }
+                final FileInfo remoteFile = remoteFiles.get(objectName);
+                pool.submit(() -> {
+                    File uploadFile = file;
+                    int encoding = QiniuManifest.ENCODING_IDENTITY;
+                    if (matches(compressedFilePatterns, path)) {
+                        uploadFile = compress(file, compressedDirectory);
+                        if (uploadFile.length() < file.length()) {
+                            encoding = QiniuManifest.ENCODING_GZIP;
+                        } else {
+                            Files.deleteIfExists(uploadFile.toPath());
+                            uploadFile = file;
+                        }
+                    }
+                    StringMap metadata = null;
+                    if (encoding == QiniuManifest.ENCODING_GZIP) {
+                        metadata = new StringMap().put("x-qn-meta-content-encoding", "gzip")
+                                .put("x-qn-meta-original-size", file.length());
+                    }
+                    boolean uploaded = false;
+                    try {
+                        String hash;
+                        if (remoteFile == null) {
+                            final Map<String, String> sameSizeFiles = previousFiles.get(file.length());
+                            if (sameSizeFiles != null && encoding == QiniuManifest.ENCODING_IDENTITY) {
+                                hash = Etag.file(file);
+                                final String previousObjectName = sameSizeFiles.get(hash);
+                                if (previousObjectName != null) {
+                                    copiedFiles.put(objectName, file);
+                                    copier.copy(previousObjectName, objectName);
+                                    addEntry(entries, path, objectName, file, hash, putTime, encoding);
+                                    return;
+                                }
+                            }
+                            hash = tuner.put(uploadFile, objectName, uploadToken, metadata)
+                                    .jsonToObject(DefaultPutRet.class).hash;
+                            LOG.log(Level.INFO, "Qiniu upload {0} to {1}",
+                                    new Object[] { file.getAbsolutePath(), objectName });
+                        } else if (isUnchanged(uploadFile, remoteFile)) {
+                            hash = remoteFile.hash;
+                            unchangedCount.incrementAndGet();
+                            LOG.log(Level.INFO, "Qiniu skip unchanged {0}", objectName);
+                        } else {
+                            final String overwriteToken = auth.uploadToken(this.config.getBucketName(), objectName,
+                                    24 * 3600, overwriteParams);
+                            hash = tuner.put(uploadFile, objectName, overwriteToken, metadata)
+                                    .jsonToObject(DefaultPutRet.class).hash;
+                            LOG.log(Level.INFO, "Qiniu overwrite {0} to {1}",
+                                    new Object[] { file.getAbsolutePath(), objectName });
+                        }
+                        addEntry(entries, path, objectName, file, hash, putTime, encoding);
+                        uploaded = true;
+                    } finally {
+                        // A compressed copy whose upload failed is kept for the next attempt to resume
+                        if (uploadFile != file && (uploaded || compressedDirectory == null)) {
+                            Files.deleteIfExists(uploadFile.toPath());
+                        }
+                    }
+                });
+            });
+            if (packWriter != null) {
+                packWriter.flush();
+                packCount = packWriter.getPackCount();
+            }
+            pool.awaitCompletion();
+            copier.flush();
+
+            for (String objectName : copier.getFailedKeys()) {
+                final File file = copiedFiles.get(objectName);
+                final String overwriteToken = auth.uploadToken(this.config.getBucketName(), objectName, 24 * 3600,
+                        overwriteParams);
+                pool.submit(() -> {
+                    tuner.put(file, objectName, overwriteToken, null);
+                    LOG.log(Level.INFO, "Qiniu upload {0} to {1}", new Object[] { file.getAbsolutePath(), objectName });
+                });
+            }
+            pool.awaitCompletion();
+        }
+        if (this.listener != null && packedCount.get() > 0) {
+            this.listener.getLogger().println(Messages.QiniuUploader_PackedArchiveSummary(packedCount.get(),
+                    packCount));
+        }
+        if (this.listener != null && this.config.isIncrementalArchive()) {
+            this.listener.getLogger().println(Messages.QiniuUploader_IncrementalArchiveSummary(
+                    fileCount.get() - packedCount.get() - unchangedCount.get(), unchangedCount.get()));
+        }
+        if (this.listener != null && copier.getCopiedCount() > 0) {
+            this.listener.getLogger().println(Messages.QiniuUploader_CopiedFromPreviousBuildSummary(
+                    copier.getCopiedCount(), this.previousObjectNamePrefix));
+        }
+        return new Summary(fileCount.get(), byteCount.get());
+    }
+
+    @CheckForNull
+    private QiniuPack.Writer createPackWriter(@Nonnull final QiniuUploadTuner tuner,
+            @Nonnull final QiniuUploadPool pool, @CheckForNull final List<QiniuManifest.Entry> entries,
+            final long putTime) {
+        if (!this.config.isPackSmallFiles() || entries == null) {
+            return null;
+        }
+        return new QiniuPack.Writer(this.config, tuner, pool, this.objectNamePrefix, entries, putTime);
+    }
+
+    private static void addEntry(@CheckForNull final List<QiniuManifest.Entry> entries, @Nonnull final String path,
+            @Nonnull final String objectName, @Nonnull final File file, @Nonnull final String hash,
+            final long putTime, final int encoding) {
+        if (entries != null) {
+            entries.add(new QiniuManifest.Entry(path, objectName, file.length(), hash, putTime, -1, encoding));
+        }
+    }
+
+    @Nonnull
+    private static String[] getCompressedFilePatterns(@Nonnull final String compressedFiles) {
+        final List<String> patterns = new ArrayList<>();
+        for (String pattern : compressedFiles.split(",")) {
+            pattern = pattern.trim();
+            if (!pattern.isEmpty()) {
+                patterns.add(pattern);
+            }
+        }
+        return patterns.toArray(new String[0]);
+    }
+
+    private static boolean matches(@Nonnull final String[] patterns, @Nonnull final String path) {
+        for (String pattern : patterns) {
+            if (SelectorUtils.matchPath(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // GZIPOutputStream writes a zero modification time, so the same content always compresses to the same bytes
+    // and incremental archiving can still compare etags. In the journal directory the copy is named after the path,
+    // size and modification time of its source and only renamed into place when complete, so an interrupted upload
+    // finds the same file again and resumes it; a changed source gets a new name.
+    @Nonnull
+    private static File compress(@Nonnull final File file, @CheckForNull final File directory) throws IOException {
+        File compressedFile = null;
+        if (directory != null) {
+            compressedFile = new File(directory, Util.getDigestOf(file.getAbsolutePath() + ':' + file.length()
+                    + ':' + file.lastModified()) + ".gz");
+            if (compressedFile.isFile()) {
+                return compressedFile;
+            }
+        }
+        final File tempFile = directory != null ? Files.createTempFile(directory.toPath(), "qiniu-artifact", ".tmp")
+                .toFile() : Files.createTempFile("qiniu-artifact", ".gz").toFile();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(tempFile))) {
+            Files.copy(file.toPath(), out);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile.toPath());
+            throw e;
+        }
+        if (compressedFile == null) {
+            return tempFile;
+        }
+        Files.move(tempFile.toPath(), compressedFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return compressedFile;
+    }
+
+    private void uploadManifest(final int flags, @Nonnull final List<QiniuManifest.Entry> entries)
+            throws IOException {
+        final File manifestFile = QiniuManifest.createTempFile();
+        try {
+            try (QiniuManifest.Writer writer = new QiniuManifest.Writer(new FileOutputStream(manifestFile),
+                    this.objectNamePrefix, flags)) {
+                for (QiniuManifest.Entry entry : entries) {
+                    writer.write(entry);
+                }
+            }
+            QiniuManifest.upload(this.config, this.config.getUploadManager(), manifestFile,
+                    this.objectNamePrefix);
+        } finally {
+            Files.deleteIfExists(manifestFile.toPath());
+        }
+    }
+
+    // Objects uploaded in resumable mode with a part size other than 4 MB do not carry the standard Qiniu etag,
+    // so a mismatch only means the file is uploaded again.
+    private static boolean isUnchanged(@Nonnull final File file, @Nonnull final FileInfo remoteFile)
+            throws IOException {
+        return remoteFile.fsize == file.length() && Etag.file(file).equals(remoteFile.hash);
+    }
+
+    @Nonnull
+    private Summary uploadFilesToContentStore(final File root) throws IOException, InterruptedException {
+        final QiniuUploadTuner tuner = new QiniuUploadTuner(this.config, QiniuUploadJournal.open(root),
+                this.rateLimiter);
+        final long putTime = System.currentTimeMillis() * 10000;
+        final List<QiniuManifest.Entry> entries = Collections.synchronizedList(new ArrayList<>());
+        final Map<String, File> blobFiles = new ConcurrentHashMap<>();
+        final AtomicLong byteCount = new AtomicLong();
+        try (QiniuUploadPool pool = new QiniuUploadPool(this.config.getUploadConcurrency())) {
+            this.forEachArtifact(root, (String filePath, String objectNameWithoutPrefix) -> {
+                final File file = new File(root, filePath);
+                pool.submit(() -> {
+                    final String etag = Etag.file(file);
+                    final long size = file.length();
+                    entries.add(new QiniuManifest.Entry(objectNameWithoutPrefix,
+                            QiniuContentStore.getBlobObjectName(this.config, etag), size, etag, putTime));
+                    byteCount.addAndGet(size);
+                    blobFiles.putIfAbsent(etag, file);
+                });
+            });
+            pool.awaitCompletion();
+        }
+        if (entries.isEmpty()) {
+            return new Summary(0, 0);
+        }
+
+        this.uploadManifest(QiniuManifest.FLAG_CONTENT_ADDRESSED, entries);
+        QiniuContentStore.addReference(this.config, this.config.getUploadManager(), this.objectNamePrefix);
+
+        final Set<String> missingEtags = QiniuContentStore.findMissingBlobs(this.config, blobFiles.keySet(),
+                this.rateLimiter);
+        final StringMap params = new StringMap().put("insertOnly", 1).put("fileType", this.config.getFileType());
+        final String uploadToken = this.config.getAuth().uploadToken(this.config.getBucketName(), null, 24 * 3600,
+                params);
+        try (QiniuUploadPool pool = new QiniuUploadPool(this.config.getUploadConcurrency())) {
+            for (String etag : missingEtags) {
+                final File file = blobFiles.get(etag);
+                final String objectName = QiniuContentStore.getBlobObjectName(this.config, etag);
+                pool.submit(() -> {
+                    try {
+                        tuner.put(file, objectName, uploadToken, null);
+                        LOG.log(Level.INFO, "Qiniu upload {0} to {1}", new Object[] { file.getAbsolutePath(), objectName });
+                    } catch (QiniuException e) {
+                        if (e.code() != 614) {
+                            throw e;
+                        }
+                    }
+                });
+            }
+            pool.awaitCompletion();
+        }
+        if (this.listener != null) {
+            this.listener.getLogger().println(Messages.QiniuUploader_ContentAddressableArchiveSummary(
+                    entries.size(), missingEtags.size()));
+        }
+        return new Summary(entries.size(), byteCount.get());
+    }
+
+    private void printThroughput(final long startTime) {
+        final long uploadedBytes = this.rateLimiter.getUploadedBytes();
+        if (this.listener == null || uploadedBytes == 0) {
+            return;
+        }
+        final double seconds = Math.max(1, System.nanoTime() - startTime) / 1e9;
+        this.listener.getLogger().println(Messages.QiniuUploader_ThroughputSummary(uploadedBytes / 1024,
+                String.format("%.1f", seconds), Math.round(uploadedBytes / 1024 / seconds)));
+    }
+
+    static final class Summary implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final int fileCount;
+        final long byteCount;
+
+        Summary(final int fileCount, final long byteCount) {
+            this.fileCount = fileCount;
+            this.byteCount = byteCount;
         }
     }
 }
@@ -1,22 +1,132 @@
 package io.jenkins.plugins;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
 import com.qiniu.http.Response;
 import com.qiniu.storage.BucketManager;
 import com.qiniu.storage.model.BatchStatus;
 import com.qiniu.storage.model.FileInfo;
 import com.qiniu.storage.model.FileListing;
 
+import hudson.Util;
+import io.jenkins.plugins.QiniuArtifactManagerFactory.CannotGetDownloadDomain;
+
 final class QiniuUtils {
     private static final Logger LOG = Logger.getLogger(QiniuUtils.class.getName());
 
+    @Nonnull
+    static URL getDownloadURL(@Nonnull final QiniuConfig config, @Nonnull final String objectName)
+            throws IOException {
+        String downloadDomain = Util.fixEmptyAndTrim(config.getDownloadDomain());
+        if (downloadDomain == null) {
+            downloadDomain = config.getSourceHost();
+        }
+        return getURL(config, downloadDomain, objectName);
+    }
+
+    // Objects which are overwritten, like manifests, are read from the source domain of the bucket, since a CDN in
+    // front of the download domain may still serve the previous content.
+    @Nonnull
+    static URL getSourceURL(@Nonnull final QiniuConfig config, @Nonnull final String objectName) throws IOException {
+        final String sourceDomain = config.getSourceHost();
+        if (sourceDomain == null) {
+            return getDownloadURL(config, objectName);
+        }
+        return getURL(config, sourceDomain, objectName);
+    }
+
+    @Nonnull
+    private static URL getURL(@Nonnull final QiniuConfig config, @CheckForNull String downloadDomain,
+            @Nonnull String objectName) throws IOException {
+        String scheme = "http";
+        if (config.isUseHTTPs()) {
+            scheme = "https";
+        }
+        if (!objectName.startsWith(QiniuFileSystem.SEPARATOR)) {
+            objectName = QiniuFileSystem.SEPARATOR + objectName;
+        }
+
+        if (downloadDomain == null) {
+            throw new CannotGetDownloadDomain("The download domain is not set");
+        } else {
+            int protocolIndex = downloadDomain.indexOf("://");
+            if (protocolIndex != -1) {
+                downloadDomain = downloadDomain.substring(protocolIndex + "://".length());
+            }
+        }
+        final String url = new URL(scheme, downloadDomain, objectName).toString();
+        LOG.log(Level.INFO, "QiniuUtils::getURL() url={0}", url);
+        return new URL(config.getAuth().privateDownloadUrl(url, 180));
+    }
+
+    @Nonnull
+    static InputStream openObject(@Nonnull final QiniuConfig config, @Nonnull final String objectName)
+            throws IOException {
+        return getDownloadURL(config, objectName).openStream();
+    }
+
+    @Nonnull
+    static InputStream openSourceObject(@Nonnull final QiniuConfig config, @Nonnull final String objectName)
+            throws IOException {
+        return getSourceURL(config, objectName).openStream();
+    }
+
+    @Nonnull
+    static InputStream openObjectRange(@Nonnull final QiniuConfig config, @Nonnull final String objectName,
+            final long offset, final long length) throws IOException {
+        if (length == 0) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        final HttpURLConnection connection = openRangeConnection(config, objectName, offset, length);
+        final InputStream in = connection.getInputStream();
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+            IOUtils.skipFully(in, offset);
+        }
+        return new BoundedInputStream(in, length);
+    }
+
+    // Returns null instead of skipping to the offset when the server ignores the Range header, so callers which
+    // request many ranges of one object can read it sequentially instead.
+    @CheckForNull
+    static InputStream openObjectPartialRange(@Nonnull final QiniuConfig config, @Nonnull final String objectName,
+            final long offset, final long length) throws IOException {
+        if (length == 0) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        final HttpURLConnection connection = openRangeConnection(config, objectName, offset, length);
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+            connection.disconnect();
+            return null;
+        }
+        return new BoundedInputStream(connection.getInputStream(), length);
+    }
+
+    @Nonnull
+    private static HttpURLConnection openRangeConnection(@Nonnull final QiniuConfig config,
+            @Nonnull final String objectName, final long offset, final long length) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) getDownloadURL(config, objectName).openConnection();
+        connection.setRequestProperty("Range", "bytes=" + offset + "-" + (offset + length - 1));
+        if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+            throw new FileNotFoundException(objectName);
+        }
+        return connection;
+    }
+
     static void listPrefix(
             @Nonnull final BucketManager bucketManager,
             @Nonnull final String bucketName,
@@ -39,35 +149,162 @@ final class QiniuUtils {
         }
     }
 
+    static void listDirectory(
+            @Nonnull final BucketManager bucketManager,
+            @Nonnull final String bucketName,
+            @Nonnull final String prefix,
+            @Nonnull final FileInfoConsumer fileConsumer,
+            @Nonnull final CommonPrefixConsumer commonPrefixConsumer) throws IOException {
+        String marker = null;
+        for (;;) {
+            LOG.log(Level.INFO, "QiniuUtils::listDirectory(), bucket={0}, prefix={1}, marker={2}",
+                    new Object[] { bucketName, prefix, marker });
+            final FileListing list = bucketManager.listFiles(bucketName, prefix, marker, 1000,
+                    QiniuFileSystem.SEPARATOR);
+            if (list.items != null) {
+                for (FileInfo metadata : list.items) {
+                    fileConsumer.accept(metadata);
+                }
+            }
+            if (list.commonPrefixes != null) {
+                for (String commonPrefix : list.commonPrefixes) {
+                    commonPrefixConsumer.accept(commonPrefix);
+                }
+            }
+            marker = list.marker;
+            if (marker == null || marker.isEmpty()) {
+                break;
+            }
+        }
+    }
+
     @FunctionalInterface
     static interface FileInfoConsumer {
         void accept(FileInfo fileInfo) throws IOException;
     }
 
+    @FunctionalInterface
+    static interface CommonPrefixConsumer {
+        void accept(String commonPrefix) throws IOException;
+    }
+
     static void deletePrefix(
             @Nonnull final BucketManager bucketManager,
             @Nonnull final String bucketName,
             @Nonnull final String prefix) throws IOException {
-        final BucketManager.BatchOperations batch = new BucketManager.BatchOperations();
-        final List<String> keys = new ArrayList<String>(1000);
-        listPrefix(bucketManager, bucketName, prefix, (FileInfo fileInfo) -> {
-            batch.addDeleteOp(bucketName, fileInfo.key);
-            keys.add(fileInfo.key);
-            LOG.log(Level.INFO, "QiniuUtils::delete(), bucket={0}, key={1}", new Object[] { bucketName, fileInfo.key });
-            if (keys.size() >= 1000) {
-                checkBatchResponse(bucketManager.batch(batch), keys);
-                batch.clearOps();
-                keys.clear();
+        final BatchDeleter deleter = new BatchDeleter(bucketManager, bucketName);
+        listPrefix(bucketManager, bucketName, prefix, (FileInfo fileInfo) -> deleter.delete(fileInfo.key));
+        deleter.flush();
+    }
+
+    static void deleteKeys(
+            @Nonnull final BucketManager bucketManager,
+            @Nonnull final String bucketName,
+            @Nonnull final Iterable<String> keys) throws IOException {
+        final BatchDeleter deleter = new BatchDeleter(bucketManager, bucketName);
+        for (String key : keys) {
+            deleter.delete(key);
+        }
+        deleter.flush();
+    }
+
+    private static final class BatchDeleter {
+        private final BucketManager bucketManager;
+        private final String bucketName;
+        private final BucketManager.BatchOperations batch = new BucketManager.BatchOperations();
+        private final List<String> keys = new ArrayList<String>(1000);
+
+        BatchDeleter(@Nonnull final BucketManager bucketManager, @Nonnull final String bucketName) {
+            this.bucketManager = bucketManager;
+            this.bucketName = bucketName;
+        }
+
+        void delete(@Nonnull final String key) throws IOException {
+            this.batch.addDeleteOp(this.bucketName, key);
+            this.keys.add(key);
+            LOG.log(Level.INFO, "QiniuUtils::delete(), bucket={0}, key={1}", new Object[] { this.bucketName, key });
+            if (this.keys.size() >= 1000) {
+                this.flush();
             }
-        });
-        if (!keys.isEmpty()) {
-            checkBatchResponse(bucketManager.batch(batch), keys);
-            batch.clearOps();
-            keys.clear();
         }
+
+        void flush() throws IOException {
+            if (!this.keys.isEmpty()) {
+                checkBatchResponse(this.bucketManager.batch(this.batch), this.keys, "Delete");
+                this.batch.clearOps();
+                this.keys.clear();
+            }
+        }
+    }
+
+    static final class BatchCopier {
+        private final BucketManager bucketManager;
+        private final String bucketName;
+        private final QiniuRateLimiter rateLimiter;
+        private final BucketManager.BatchOperations batch = new BucketManager.BatchOperations();
+        private final List<String> fromKeys = new ArrayList<String>(1000), toKeys = new ArrayList<String>(1000);
+        private final List<String> failedKeys = new ArrayList<String>();
+        private int copiedCount = 0;
+
+        BatchCopier(@Nonnull final BucketManager bucketManager, @Nonnull final String bucketName,
+                @Nonnull final QiniuRateLimiter rateLimiter) {
+            this.bucketManager = bucketManager;
+            this.bucketName = bucketName;
+            this.rateLimiter = rateLimiter;
+        }
+
+        synchronized void copy(@Nonnull final String fromKey, @Nonnull final String toKey)
+                throws IOException, InterruptedException {
+            this.batch.addCopyOp(this.bucketName, fromKey, this.bucketName, toKey);
+            this.fromKeys.add(fromKey);
+            this.toKeys.add(toKey);
+            LOG.log(Level.INFO, "QiniuUtils::copy(), bucket={0}, from={1}, to={2}",
+                    new Object[] { this.bucketName, fromKey, toKey });
+            if (this.toKeys.size() >= 1000) {
+                this.flush();
+            }
+        }
+
+        synchronized void flush() throws IOException, InterruptedException {
+            if (this.toKeys.isEmpty()) {
+                return;
+            }
+            this.rateLimiter.acquire(0, 1);
+            final Response response = this.bucketManager.batch(this.batch);
+            final BatchStatus[] batchStatusList = response.jsonToObject(BatchStatus[].class);
+            for (int i = 0; i < batchStatusList.length; i++) {
+                final BatchStatus status = batchStatusList[i];
+                if (status.code == 200) {
+                    this.copiedCount++;
+                } else {
+                    LOG.log(Level.WARNING, "QiniuUtils::copy() error, from={0}, to={1}: {2}",
+                            new Object[] { this.fromKeys.get(i), this.toKeys.get(i), getError(status) });
+                    this.failedKeys.add(this.toKeys.get(i));
+                }
+            }
+            this.batch.clearOps();
+            this.fromKeys.clear();
+            this.toKeys.clear();
+        }
+
+        @Nonnull
+        synchronized List<String> getFailedKeys() {
+            return new ArrayList<String>(this.failedKeys);
+        }
+
+        synchronized int getCopiedCount() {
+            return this.copiedCount;
+        }
+    }
+
+    // A failed batch entry may come back without a body, in which case only its code is known
+    @Nonnull
+    static String getError(@Nonnull final BatchStatus status) {
+        return status.data == null || status.data.error == null ? String.valueOf(status.code) : status.data.error;
     }
 
-    static private void checkBatchResponse(final Response response, final List<String> keys) throws IOException {
+    static void checkBatchResponse(final Response response, final List<String> keys, final String operation)
+            throws IOException {
         if (response == null) {
             return;
         }
@@ -78,7 +315,7 @@ final class QiniuUtils {
             if (status.code == 200 || status.code == 612) {
                 continue;
             }
-            throw new IOException(String.format("Delete error %s: %s", keys.get(i), status.data.error));
+            throw new IOException(String.format("%s error %s: %s", operation, keys.get(i), getError(status)));
         }
     }
 }
@@ -0,0 +1,129 @@
+package io.jenkins.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+
+public class QiniuFileSystemTest {
+    @Test
+    public void addsInAnyOrder() {
+        final QiniuFileSystem.FileTable files = new QiniuFileSystem.FileTable();
+        for (String name : new String[] { "d", "b", "e", "a", "c" }) {
+            files.add(name, name.charAt(0), 100, "etag-" + name, null, -1, QiniuManifest.ENCODING_IDENTITY);
+        }
+        assertEquals(5, files.size());
+        assertEquals(-1, files.indexOf("f"));
+        for (int i = 0; i < files.size(); i++) {
+            final String name = String.valueOf((char) ('a' + i));
+            assertEquals(i, files.indexOf(name));
+            assertEquals(name, files.getName(i));
+            assertEquals(name.charAt(0), files.getSize(i));
+            assertEquals("etag-" + name, files.getHash(i));
+            assertNull(files.getObjectName(i));
+            assertEquals(-1, files.getPackOffset(i));
+        }
+    }
+
+    @Test
+    public void keepsRowsAddedInOrder() throws Exception {
+        final QiniuFileSystem.FileTable files = new QiniuFileSystem.FileTable();
+        for (String name : new String[] { "a", "b", "c" }) {
+            files.add(name, 1, 100, null, null, -1, QiniuManifest.ENCODING_IDENTITY);
+        }
+        final Object names = getNames(files);
+        files.sort();
+        assertSame(names, getNames(files));
+        assertEquals(1, files.indexOf("b"));
+    }
+
+    @Test
+    public void lastDuplicateWins() {
+        final QiniuFileSystem.FileTable files = new QiniuFileSystem.FileTable();
+        files.add("b", 1, 100, "etag-1", null, -1, QiniuManifest.ENCODING_IDENTITY);
+        files.add("a", 2, 100, "etag-2", null, -1, QiniuManifest.ENCODING_IDENTITY);
+        files.add("b", 3, 200, "etag-3", "packs/0", 16, QiniuManifest.ENCODING_IDENTITY);
+        files.add("b", 4, 300, null, null, -1, QiniuManifest.ENCODING_IDENTITY);
+        files.add("a", 5, 400, "etag-5", null, -1, QiniuManifest.ENCODING_IDENTITY);
+        files.sort();
+        assertEquals(2, files.size());
+        assertEquals(5, files.getSize(files.indexOf("a")));
+        assertEquals("etag-5", files.getHash(files.indexOf("a")));
+        final int b = files.indexOf("b");
+        assertEquals(4, files.getSize(b));
+        assertEquals(300, files.getPutTime(b));
+        assertNull(files.getHash(b));
+        assertNull(files.getObjectName(b));
+        assertEquals(-1, files.getPackOffset(b));
+    }
+
+    @Test
+    public void removeKeepsOtherRows() {
+        final QiniuFileSystem.FileTable files = new QiniuFileSystem.FileTable();
+        for (int i = 99; i >= 0; i--) {
+            files.add(String.format("file-%02d", i), i, i * 10, "etag-" + i, null, i % 2 == 0 ? i : -1, i % 3);
+        }
+        files.remove("file-50");
+        files.remove("missing");
+        assertEquals(99, files.size());
+        assertEquals(-1, files.indexOf("file-50"));
+        for (int i = 0; i < 100; i++) {
+            if (i == 50) {
+                continue;
+            }
+            final int index = files.indexOf(String.format("file-%02d", i));
+            assertEquals(i < 50 ? i : i - 1, index);
+            assertEquals(i, files.getSize(index));
+            assertEquals(i * 10, files.getPutTime(index));
+            assertEquals("etag-" + i, files.getHash(index));
+            assertEquals(i % 2 == 0 ? i : -1, files.getPackOffset(index));
+            assertEquals(i % 3, files.getEncoding(index));
+        }
+    }
+
+    @Test
+    public void serializesAllColumns() throws IOException {
+        final QiniuFileSystem.FileTable files = new QiniuFileSystem.FileTable();
+        files.add("b.txt", 1, 100, "etag-b", null, -1, QiniuManifest.ENCODING_IDENTITY);
+        files.add("a.txt", 2, 200, null, "packs/0", 64, QiniuManifest.ENCODING_IDENTITY);
+        files.add("c.log", 3, 300, "etag-c", "cas/etag-c", -1, QiniuManifest.ENCODING_GZIP);
+        final QiniuFileSystem.FileTable copy = copy(files);
+        assertEquals(files.size(), copy.size());
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(files.getName(i), copy.getName(i));
+            assertEquals(files.getSize(i), copy.getSize(i));
+            assertEquals(files.getPutTime(i), copy.getPutTime(i));
+            assertEquals(files.getHash(i), copy.getHash(i));
+            assertEquals(files.getObjectName(i), copy.getObjectName(i));
+            assertEquals(files.getPackOffset(i), copy.getPackOffset(i));
+            assertEquals(files.getEncoding(i), copy.getEncoding(i));
+        }
+        assertEquals(0, copy(new QiniuFileSystem.FileTable()).size());
+    }
+
+    private static Object getNames(final QiniuFileSystem.FileTable files) throws Exception {
+        final Field field = QiniuFileSystem.FileTable.class.getDeclaredField("names");
+        field.setAccessible(true);
+        return field.get(files);
+    }
+
+    private static QiniuFileSystem.FileTable copy(final QiniuFileSystem.FileTable files) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            files.writeTo(out);
+        }
+        final QiniuFileSystem.FileTable copy = new QiniuFileSystem.FileTable();
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy.readFrom(in);
+        }
+        return copy;
+    }
+}
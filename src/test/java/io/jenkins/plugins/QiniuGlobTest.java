@@ -0,0 +1,120 @@
+package io.jenkins.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QiniuGlobTest {
+    private static final List<String> FILES = Arrays.asList("a.txt", "A.TXT", "b/c.txt", "b/d/e.txt", "b/d/f.log",
+            "b/d/g/h.txt", ".git/config", "src/Main.java", "src/Main.java~", "src/.svn/entries", "docs/readme.md",
+            "docs/sub/readme.md", "CVS/Root");
+    private static final List<String> DIRECTORIES = Arrays.asList("b", "b/d", "b/d/g", "docs", "docs/sub", "src",
+            ".git", "CVS");
+    private static final List<String> PATTERNS = Arrays.asList("**", "**/*.txt", "*.txt", "*.TXT", "b/", "b/**",
+            "b/**/*.txt", "**/d/**", "b/d/*", "docs/*/readme.md", "**/readme.md", "src/**/*", "b/*/*/h.txt",
+            "b\\d\\e.txt", "**/**/e.txt");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void matchesLikeDirectoryScanner() throws IOException {
+        final File root = this.temporaryFolder.getRoot();
+        for (String path : FILES) {
+            final File file = new File(root, path);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+        final List<String> includesList = new ArrayList<>(PATTERNS);
+        includesList.addAll(Arrays.asList("", "**/readme.md, b/*", "b/c.txt b/d/e.txt", " *.txt ,, b/d/ "));
+        for (String includes : includesList) {
+            for (String excludes : Arrays.asList("", "**/d/**", "docs/", "**/*.md b/c.txt")) {
+                for (boolean useDefaultExcludes : new boolean[] { false, true }) {
+                    assertEquals(includes + " - " + excludes + " - " + useDefaultExcludes,
+                            scan(root, includes, excludes, useDefaultExcludes),
+                            match(includes, excludes, useDefaultExcludes));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchPathLikeSelectorUtils() {
+        for (String pattern : PATTERNS) {
+            final QiniuGlob glob = new QiniuGlob(pattern, "", false);
+            for (String path : FILES) {
+                assertEquals(pattern + " - " + path,
+                        SelectorUtils.matchPath(toAntPattern(pattern), toAntPath(path), true), glob.matches(path));
+            }
+        }
+    }
+
+    // DirectoryScanner only descends into a directory matching the start of a pattern which reaches deeper
+    @Test
+    public void mayMatchBelowLikeDirectoryScanner() {
+        for (String pattern : PATTERNS) {
+            final QiniuGlob glob = new QiniuGlob(pattern, "", false);
+            final String antPattern = toAntPattern(pattern);
+            for (String directory : DIRECTORIES) {
+                final String[] segments = StringUtils.split(directory, '/');
+                final boolean deeper = antPattern.contains("**")
+                        || SelectorUtils.tokenizePath(antPattern).size() > segments.length;
+                assertEquals(pattern + " - " + directory,
+                        deeper && SelectorUtils.matchPatternStart(antPattern, toAntPath(directory), true),
+                        glob.mayMatchBelow(segments, segments.length));
+            }
+        }
+    }
+
+    private static TreeSet<String> scan(final File root, final String includes, final String excludes,
+            final boolean useDefaultExcludes) {
+        final FileSet fileSet = new FileSet();
+        fileSet.setProject(new Project());
+        fileSet.setDir(root);
+        fileSet.setIncludes(includes);
+        fileSet.setExcludes(excludes);
+        fileSet.setDefaultexcludes(useDefaultExcludes);
+        final TreeSet<String> result = new TreeSet<>();
+        for (String path : fileSet.getDirectoryScanner().getIncludedFiles()) {
+            result.add(path.replace(File.separatorChar, '/'));
+        }
+        return result;
+    }
+
+    private static TreeSet<String> match(final String includes, final String excludes,
+            final boolean useDefaultExcludes) {
+        final QiniuGlob glob = new QiniuGlob(includes, excludes, useDefaultExcludes);
+        final TreeSet<String> result = new TreeSet<>();
+        for (String path : FILES) {
+            if (glob.matches(path)) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    private static String toAntPattern(final String pattern) {
+        String antPattern = toAntPath(pattern.replace('\\', '/'));
+        if (antPattern.endsWith(File.separator)) {
+            antPattern += "**";
+        }
+        return antPattern;
+    }
+
+    private static String toAntPath(final String path) {
+        return path.replace('/', File.separatorChar);
+    }
+}
@@ -0,0 +1,60 @@
+package io.jenkins.plugins;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+
+// Compares QiniuPath with the java.nio.file.Path round trips QiniuFile used to make: the path of a file, a sibling
+// resolved from its parent, and the segments walked to find its node.
+@JmhBenchmark
+public class QiniuPathBenchmark {
+    private static final String OBJECT_NAME = "folder/job/42/build/outputs/apk/release/app-release.apk";
+    private static final String SIBLING_NAME = "output-metadata.json";
+
+    @Benchmark
+    public String siblingWithPath() {
+        final Path path = fromObjectNameToFileSystemPath(OBJECT_NAME);
+        return fromFileSystemPathToObjectName(path.getParent().resolve(SIBLING_NAME).normalize().toString());
+    }
+
+    @Benchmark
+    public String siblingWithQiniuPath() {
+        return QiniuPath.of(OBJECT_NAME).getParent().resolve(SIBLING_NAME).toString();
+    }
+
+    @Benchmark
+    public void segmentsWithPath(final Blackhole blackhole) {
+        for (Path segment : fromObjectNameToFileSystemPath(OBJECT_NAME)) {
+            blackhole.consume(segment.toString());
+        }
+    }
+
+    @Benchmark
+    public void segmentsWithQiniuPath(final Blackhole blackhole) {
+        final QiniuPath path = QiniuPath.of(OBJECT_NAME);
+        for (int i = 0; i < path.getNameCount(); i++) {
+            blackhole.consume(path.getName(i));
+        }
+    }
+
+    private static Path fromObjectNameToFileSystemPath(final String objectName) {
+        final String[] segments = objectName.split(Pattern.quote(QiniuFileSystem.SEPARATOR));
+        return FileSystems.getDefault().getPath(segments[0], Arrays.copyOfRange(segments, 1, segments.length));
+    }
+
+    private static String fromFileSystemPathToObjectName(final String filePath) {
+        final StringJoiner joiner = new StringJoiner(QiniuFileSystem.SEPARATOR);
+        for (String segment : filePath.split(Pattern.quote(File.separator))) {
+            joiner.add(segment);
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package io.jenkins.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+
+public class QiniuPathTest {
+    @Test
+    public void parsesAndNormalizes() {
+        assertEquals("a/b/c", QiniuPath.of("a/b/c").toString());
+        assertEquals("a/c", QiniuPath.of("a/b/../c").toString());
+        assertEquals("a/b", QiniuPath.of("./a/./b/.").toString());
+        assertEquals("a/b", QiniuPath.of("a//b/").toString());
+        assertEquals("a/b", QiniuPath.of("/a/b").toString());
+        assertEquals("", QiniuPath.of("a/..").toString());
+        assertSame(QiniuPath.ROOT, QiniuPath.of(""));
+        assertSame(QiniuPath.ROOT, QiniuPath.of(null));
+        assertTrue(QiniuPath.of("a/..").isRoot());
+    }
+
+    @Test
+    public void keepsLeadingParentReferences() {
+        assertEquals("..", QiniuPath.of("..").toString());
+        assertEquals("../a", QiniuPath.of("../a").toString());
+        assertEquals("../..", QiniuPath.of("../..").toString());
+        assertEquals("..", QiniuPath.of("a/../..").toString());
+        assertEquals("../b", QiniuPath.of("a/../../b").toString());
+        assertEquals("..", QiniuPath.ROOT.resolve("..").toString());
+        assertEquals("../..", QiniuPath.of("..").resolve("..").toString());
+    }
+
+    @Test
+    public void resolvesSingleNames() {
+        final QiniuPath path = QiniuPath.of("a/b");
+        assertSame(path, path.resolve(""));
+        assertSame(path, path.resolve("."));
+        assertEquals("a", path.resolve("..").toString());
+        assertEquals("a/b/c", path.resolve("c").toString());
+        assertEquals("a/b/c/d", path.resolve("c/d").toString());
+        assertEquals("a/c", path.resolve("../c").toString());
+        assertEquals("a/b/c", path.resolve("c//").toString());
+    }
+
+    @Test
+    public void resolvesPaths() {
+        final QiniuPath path = QiniuPath.of("a/b");
+        assertSame(path, path.resolve(QiniuPath.ROOT));
+        assertSame(path, QiniuPath.ROOT.resolve(path));
+        assertEquals(QiniuPath.of("a/b/c/d"), path.resolve(QiniuPath.of("c/d")));
+    }
+
+    @Test
+    public void segments() {
+        final QiniuPath path = QiniuPath.of("a/b/c");
+        assertEquals(3, path.getNameCount());
+        assertEquals("a", path.getName(0));
+        assertEquals("c", path.getName(2));
+        assertEquals("c", path.getFileName());
+        assertNull(QiniuPath.ROOT.getFileName());
+        assertEquals(0, QiniuPath.ROOT.getNameCount());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getNameOutOfRange() {
+        QiniuPath.of("a/b").getName(2);
+    }
+
+    @Test
+    public void parentsShareSegments() throws Exception {
+        final QiniuPath path = QiniuPath.of("a/b/c");
+        final QiniuPath parent = path.getParent();
+        assertEquals("a/b", parent.toString());
+        assertSame(getSegments(path), getSegments(parent));
+        assertSame(QiniuPath.ROOT, QiniuPath.of("a").getParent());
+        assertNull(QiniuPath.ROOT.getParent());
+
+        // Children of a shared parent must not overwrite each other's segments
+        final QiniuPath sibling = parent.resolve("d");
+        assertEquals("a/b/d", sibling.toString());
+        assertEquals("a/b/c", path.toString());
+        assertEquals("a/b/c", QiniuPath.of("a/b/c").toString());
+        assertEquals("a/x/y", parent.resolve("../x/y").toString());
+        assertEquals("a/b/c", path.toString());
+    }
+
+    @Test
+    public void equalsIgnoresSharedCapacity() {
+        final QiniuPath parent = QiniuPath.of("a/b/c").getParent();
+        final QiniuPath path = QiniuPath.of("a/b");
+        assertEquals(path, parent);
+        assertEquals(path.hashCode(), parent.hashCode());
+        assertFalse(path.equals(QiniuPath.of("a/c")));
+        assertFalse(path.equals(QiniuPath.of("a/b/c")));
+    }
+
+    private static Object getSegments(final QiniuPath path) throws Exception {
+        final Field field = QiniuPath.class.getDeclaredField("segments");
+        field.setAccessible(true);
+        return field.get(path);
+    }
+}